@@ -0,0 +1,86 @@
+import http from 'k6/http';
+import { check } from 'k6';
+import { Trend } from 'k6/metrics';
+
+// Order history read path: one page of GET /orders/user, the same page from GET /orders/user/summaries
+// (projection, no items) and the full NDJSON stream.
+// Run it against the join-fetch build and the batch-loading build with the same data set and compare
+// history_page_duration, history_stream_duration and data_received. For the database side, compare
+// pg_stat_statements (rows, shared_blks_hit, mean_exec_time) of the item queries between the two runs.
+//
+//   k6 run -e TOKEN=<buyer access token> load-test-order-history.js
+//
+// The buyer behind TOKEN should already have a large history, e.g. created with load-test-order-inserts.js.
+
+const baseUrl = __ENV.BASE_URL || 'http://localhost:8080';
+const token = __ENV.TOKEN;
+const pageSize = Number(__ENV.PAGE_SIZE || 200);
+const rate = Number(__ENV.RATE || 20);
+const durationSeconds = Number(__ENV.DURATION_SECONDS || 60);
+
+const pageDuration = new Trend('history_page_duration', true);
+const summaryDuration = new Trend('history_summary_duration', true);
+const streamDuration = new Trend('history_stream_duration', true);
+
+export const options = {
+  scenarios: {
+    page: {
+      executor: 'constant-arrival-rate',
+      rate: rate,
+      timeUnit: '1s',
+      duration: `${durationSeconds}s`,
+      preAllocatedVUs: rate * 2,
+      maxVUs: rate * 10,
+      exec: 'page',
+    },
+    summaries: {
+      executor: 'constant-arrival-rate',
+      rate: rate,
+      timeUnit: '1s',
+      duration: `${durationSeconds}s`,
+      startTime: `${durationSeconds + 10}s`,
+      preAllocatedVUs: rate * 2,
+      maxVUs: rate * 10,
+      exec: 'summaries',
+    },
+    stream: {
+      executor: 'constant-arrival-rate',
+      rate: Math.max(1, Math.floor(rate / 4)),
+      timeUnit: '1s',
+      duration: `${durationSeconds}s`,
+      startTime: `${2 * (durationSeconds + 10)}s`,
+      preAllocatedVUs: rate,
+      maxVUs: rate * 5,
+      exec: 'stream',
+    },
+  },
+  thresholds: {
+    http_req_failed: ['rate<0.01'],
+  },
+};
+
+const params = () => ({ headers: { Authorization: `Bearer ${token}` } });
+
+export function setup() {
+  if (!token) {
+    throw new Error('TOKEN is required');
+  }
+}
+
+export function page() {
+  const res = http.get(`${baseUrl}/orders/user?limit=${pageSize}`, params());
+  check(res, { 'status is 200': (r) => r.status === 200 });
+  pageDuration.add(res.timings.duration);
+}
+
+export function summaries() {
+  const res = http.get(`${baseUrl}/orders/user/summaries?limit=${pageSize}`, params());
+  check(res, { 'status is 200': (r) => r.status === 200 });
+  summaryDuration.add(res.timings.duration);
+}
+
+export function stream() {
+  const res = http.get(`${baseUrl}/orders/user/stream?limit=${pageSize}`, params());
+  check(res, { 'status is 200': (r) => r.status === 200 });
+  streamDuration.add(res.timings.duration);
+}
@@ -0,0 +1,121 @@
+import http from 'k6/http';
+import { check } from 'k6';
+import { Counter, Trend } from 'k6/metrics';
+
+// Order insert throughput for orders of 1, 10 and 100 items.
+// The requests go through the whole POST /orders saga (buyer and product lookups, insert, stock reservation), so
+// orders_created and order_create_duration are end-to-end numbers. The insert itself is the saga's "persist" stage:
+// teardown reads amazoff.saga.stage.duration{stage=persist} from /q/metrics before and after the run and prints
+// inserts/sec and the mean insert transaction time. Run one size per invocation for per-size insert numbers, once
+// against the IDENTITY build and once against the pooled sequence build:
+//
+//   k6 run -e TOKEN=<buyer access token> -e PRODUCT_IDS=p1,p2,... -e SIZES=10 load-test-order-inserts.js
+//
+// The Products and Users services must be running and the products must have enough stock.
+// Scenarios run one after another so they do not compete for the connection pool.
+// 202 (async acceptance) counts as created; 429/503 from admission control or an open circuit are counted as
+// orders_rejected and are not failures, but a run with rejections measures the limiter rather than the inserts.
+
+const baseUrl = __ENV.BASE_URL || 'http://localhost:8080';
+const metricsUrl = __ENV.METRICS_URL || `${baseUrl}/q/metrics`;
+const token = __ENV.TOKEN;
+const productIds = (__ENV.PRODUCT_IDS || '').split(',').filter((id) => id.length > 0);
+const rate = Number(__ENV.RATE || 50);
+const durationSeconds = Number(__ENV.DURATION_SECONDS || 60);
+
+const itemsPerOrder = (__ENV.SIZES || '1,10,100').split(',').map(Number);
+
+const ordersCreated = new Counter('orders_created');
+const ordersRejected = new Counter('orders_rejected');
+const createDuration = new Trend('order_create_duration', true);
+
+http.setResponseCallback(http.expectedStatuses(200, 202, 429, 503));
+
+export const options = {
+  scenarios: Object.fromEntries(itemsPerOrder.map((items, i) => [`items_${items}`, {
+    executor: 'constant-arrival-rate',
+    rate: rate,
+    timeUnit: '1s',
+    duration: `${durationSeconds}s`,
+    startTime: `${i * (durationSeconds + 10)}s`,
+    preAllocatedVUs: rate * 2,
+    maxVUs: rate * 10,
+    env: { ITEMS: String(items) },
+    tags: { items: String(items) },
+  }])),
+  thresholds: Object.fromEntries(itemsPerOrder.flatMap((items) => [
+    [`http_req_failed{items:${items}}`, ['rate<0.01']],
+    // Listed so the summary breaks the custom metrics down per order size
+    [`orders_created{items:${items}}`, ['count>=0']],
+    [`orders_rejected{items:${items}}`, ['count>=0']],
+    [`order_create_duration{items:${items}}`, ['p(95)>=0']],
+  ])),
+};
+
+function persistStage() {
+  const res = http.get(metricsUrl, { tags: { name: 'metrics' } });
+  const stage = { count: 0, sum: 0 };
+  if (res.status !== 200) {
+    return stage;
+  }
+  for (const line of res.body.split('\n')) {
+    if (!line.includes('stage="persist"') || !line.includes('outcome="success"')) {
+      continue;
+    }
+    const value = Number(line.substring(line.lastIndexOf(' ') + 1));
+    if (line.startsWith('amazoff_saga_stage_duration_seconds_count')) {
+      stage.count += value;
+    } else if (line.startsWith('amazoff_saga_stage_duration_seconds_sum')) {
+      stage.sum += value;
+    }
+  }
+  return stage;
+}
+
+export function setup() {
+  if (!token || productIds.length === 0) {
+    throw new Error('TOKEN and PRODUCT_IDS are required');
+  }
+  return { persist: persistStage(), startedAt: Date.now() };
+}
+
+export default function () {
+  const items = Number(__ENV.ITEMS);
+  const orderItems = [];
+  for (let i = 0; i < items; i++) {
+    orderItems.push({ product_id: productIds[i % productIds.length], quantity: 1 });
+  }
+
+  const res = http.post(`${baseUrl}/orders`, JSON.stringify({ order_items: orderItems }), {
+    headers: {
+      'Content-Type': 'application/json',
+      Authorization: `Bearer ${token}`,
+    },
+  });
+
+  if (res.status === 429 || res.status === 503) {
+    ordersRejected.add(1, { items: String(items) });
+    return;
+  }
+  const ok = check(res, {
+    'status is 200 or 202': (r) => r.status === 200 || r.status === 202,
+  });
+  if (ok) {
+    ordersCreated.add(1, { items: String(items) });
+    createDuration.add(res.timings.duration, { items: String(items) });
+  }
+}
+
+export function teardown(data) {
+  const before = data.persist;
+  const after = persistStage();
+  const inserts = after.count - before.count;
+  const seconds = (Date.now() - data.startedAt) / 1000;
+  if (inserts <= 0) {
+    console.warn(`No persist stage samples at ${metricsUrl}; only the end-to-end numbers are available`);
+    return;
+  }
+  // Includes the pauses between scenarios, so compare runs with the same SIZES
+  console.log(`persist stage: ${inserts} inserts, ${(inserts / seconds).toFixed(1)} inserts/sec over ${seconds.toFixed(0)}s, `
+    + `mean ${((after.sum - before.sum) / inserts * 1000).toFixed(2)} ms per order`);
+}
@@ -1,58 +1,121 @@
 package controllers;
 
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import dto.CreateOrderBatchRequest;
 import dto.CreateOrderRequest;
+import dto.OrderCursor;
+import dto.OrderHistoryQuery;
+import dto.OrderStatusDTO;
 import dto.UpdateOrderStatusRequest;
+import entities.Order;
+import enums.OrderStatus;
 import interfaces.IOrderService;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Size;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Response;
 import saga.OrderSagaOrchestrator;
+import services.IdempotencyService;
+import services.OrderStatusStream;
 import utils.JwtUtil;
 import jakarta.ws.rs.core.MediaType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.jboss.logging.MDC;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 
 @Path("/orders")
 @RolesAllowed({"buyer", "admin"})
 public class OrderController {
     private static final Logger LOG = Logger.getLogger(OrderController.class);
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String RESPOND_ASYNC = "respond-async";
     private final IOrderService orderService;
     private final OrderSagaOrchestrator orderSagaOrchestrator;
+    private final IdempotencyService idempotencyService;
+    private final OrderStatusStream orderStatusStream;
+    private final boolean asyncByDefault;
     private JwtUtil jwtUtil;
 
-    public OrderController(IOrderService orderService, OrderSagaOrchestrator orderSagaOrchestrator, JwtUtil jwtUtil) {
+    public OrderController(IOrderService orderService, OrderSagaOrchestrator orderSagaOrchestrator,
+            IdempotencyService idempotencyService, OrderStatusStream orderStatusStream, JwtUtil jwtUtil,
+            @ConfigProperty(name = "amazoff.saga.async-acceptance", defaultValue = "false") boolean asyncByDefault) {
         this.orderSagaOrchestrator = orderSagaOrchestrator;
         this.orderService = orderService;
+        this.idempotencyService = idempotencyService;
+        this.orderStatusStream = orderStatusStream;
+        this.asyncByDefault = asyncByDefault;
         this.jwtUtil = jwtUtil;
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Uni<Response> createOrder(@Valid CreateOrderRequest orderRequest) {
+    public Uni<Response> createOrder(@Valid CreateOrderRequest orderRequest,
+            @HeaderParam(IDEMPOTENCY_KEY_HEADER) @Size(max = 255) String idempotencyKey,
+            @HeaderParam("Prefer") String prefer) {
         String keycloakId = jwtUtil.getCurrentKeycloakUserId();
         LOG.infof("Received createOrder request for buyer keycloakId=%d", keycloakId);
-        return orderSagaOrchestrator.createOrderWithSaga(orderRequest, keycloakId)
+        // Prefer: respond-async (RFC 7240) answers 202 once the order is PENDING; the outcome is its status
+        boolean async = asyncByDefault || (prefer != null && prefer.contains(RESPOND_ASYNC));
+        Supplier<Uni<Order>> saga = async
+            ? () -> orderSagaOrchestrator.acceptOrderWithSaga(orderRequest, keycloakId)
+            : () -> orderSagaOrchestrator.createOrderWithSaga(orderRequest, keycloakId);
+        Uni<Order> created = idempotencyKey == null || idempotencyKey.isBlank()
+            ? saga.get()
+            : idempotencyService.createOnce(keycloakId, idempotencyKey, orderRequest, saga);
+        return created
             .onItem().invoke(order -> {
                 MDC.put("orderId", order.getId());
-                LOG.infof("Order created successfully: orderId=%d", order.getId());
+                LOG.infof(async ? "Order accepted: orderId=%d" : "Order created successfully: orderId=%d", order.getId());
                 MDC.remove("orderId");
             })
-            .onItem().transform(order -> Response.ok(order).build())
+            .onItem().transform(order -> async
+                ? Response.accepted(new OrderStatusDTO(order.getId(), order.getStatus()))
+                    .location(URI.create("/orders/" + order.getId() + "/status"))
+                    .header("Preference-Applied", RESPOND_ASYNC)
+                    .build()
+                : Response.ok(order).build())
             .onFailure().invoke(e -> LOG.errorf("Failed to create order: %s", e.getMessage()))
-            .onFailure().recoverWithItem(e -> Response.status(Response.Status.BAD_REQUEST)
+            // Idempotency conflicts keep their own status
+            .onFailure(e -> !(e instanceof WebApplicationException)).recoverWithItem(e -> Response.status(Response.Status.BAD_REQUEST)
                 .entity(e.getMessage()).build());
     }
 
+    @POST
+    @Path("/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> createOrders(@Valid CreateOrderBatchRequest batchRequest) {
+        String keycloakId = jwtUtil.getCurrentKeycloakUserId();
+        LOG.infof("Received createOrders request for buyer keycloakId=%s, orders=%d", keycloakId,
+            batchRequest.orders.size());
+        return orderSagaOrchestrator.createOrdersWithSaga(batchRequest.orders, keycloakId)
+            .onItem().invoke(outcomes -> LOG.infof("Order batch processed: confirmed=%d, total=%d",
+                outcomes.stream().filter(outcome -> outcome.status == OrderStatus.CONFIRMED).count(), outcomes.size()))
+            .onItem().transform(outcomes -> Response.ok(outcomes).build());
+    }
+
     @GET
     @Path("/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Uni<Response> getOrderById(@PathParam("id") int id) {
+    public Uni<Response> getOrderById(@PathParam("id") int id,
+            @QueryParam("include_archived") @DefaultValue("false") boolean includeArchived) {
         MDC.put("orderId", id);
         LOG.infof("Received getOrderById request: orderId=%d", id);
-        return orderService.read(id)
+        return orderService.read(id, includeArchived)
             .onItem().invoke(order -> LOG.infof("Order retrieved: orderId=%d", order.getId()))
             .onItem().transform(order -> Response.ok(order).build())
             .onFailure().invoke(e -> LOG.errorf("Failed to get order: %s", e.getMessage()))
@@ -62,18 +125,114 @@ public class OrderController {
             });
     }
 
+    @GET
+    @Path("/{id}/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<OrderStatusDTO> getOrderStatus(@PathParam("id") int id) {
+        return orderService.readStatus(id)
+            .map(status -> new OrderStatusDTO(id, status));
+    }
+
+    @GET
+    @Path("/{id}/status/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<OrderStatusDTO> streamOrderStatus(@PathParam("id") int id) {
+        LOG.infof("Received streamOrderStatus request: orderId=%d", id);
+        return orderStatusStream.follow(id);
+    }
+
     @GET
     @Path("/user")
     @Produces(MediaType.APPLICATION_JSON)
-    public Uni<Response> getAllOrdersByUser() {
+    public Uni<Response> getAllOrdersByUser(@QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("50") @Min(1) @Max(200) int limit,
+            @QueryParam("status") Set<OrderStatus> statuses,
+            @QueryParam("from") LocalDateTime from,
+            @QueryParam("to") LocalDateTime to,
+            @QueryParam("include_archived") @DefaultValue("false") boolean includeArchived) {
         String keycloakId = jwtUtil.getCurrentKeycloakUserId();
         LOG.infof("Received getAllOrdersByUser request: keycloakId=%s", keycloakId);
-        return orderService.readAllByUser(keycloakId)
-            .onItem().invoke(orders -> LOG.infof("Orders retrieved for user: keycloakId=%s, count=%d", keycloakId, orders.size()))
-            .onItem().transform(orders -> Response.ok(orders).build())
+        OrderHistoryQuery query = new OrderHistoryQuery(keycloakId, statuses, from, to, OrderCursor.decode(cursor), limit,
+            includeArchived);
+        return orderService.readPageByUser(query)
+            .onItem().invoke(page -> LOG.infof("Orders retrieved for user: keycloakId=%s, count=%d", keycloakId, page.orders().size()))
+            .onItem().transform(page -> {
+                // The body stays a plain array; the next page is announced in a header
+                Response.ResponseBuilder response = Response.ok(page.orders());
+                if (page.next() != null) {
+                    response.header(NEXT_CURSOR_HEADER, page.next().encode());
+                }
+                return response.build();
+            })
             .onFailure().invoke(e -> LOG.errorf("Failed to get orders for user: %s", e.getMessage()));
     }
 
+    @GET
+    @Path("/user/summaries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getOrderSummariesByUser(@QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("50") @Min(1) @Max(200) int limit,
+            @QueryParam("status") Set<OrderStatus> statuses,
+            @QueryParam("from") LocalDateTime from,
+            @QueryParam("to") LocalDateTime to) {
+        String keycloakId = jwtUtil.getCurrentKeycloakUserId();
+        LOG.infof("Received getOrderSummariesByUser request: keycloakId=%s", keycloakId);
+        OrderHistoryQuery query = new OrderHistoryQuery(keycloakId, statuses, from, to, OrderCursor.decode(cursor), limit);
+        return orderService.readSummariesByUser(query)
+            .onItem().transform(page -> {
+                Response.ResponseBuilder response = Response.ok(page.summaries());
+                if (page.next() != null) {
+                    response.header(NEXT_CURSOR_HEADER, page.next().encode());
+                }
+                return response.build();
+            })
+            .onFailure().invoke(e -> LOG.errorf("Failed to get order summaries for user: %s", e.getMessage()));
+    }
+
+    @GET
+    @Path("/user/spend")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getSpendByUser(@QueryParam("from") LocalDateTime from, @QueryParam("to") LocalDateTime to) {
+        String keycloakId = jwtUtil.getCurrentKeycloakUserId();
+        LOG.infof("Received getSpendByUser request: keycloakId=%s", keycloakId);
+        return orderService.readSpendByUser(keycloakId, from, to)
+            .onItem().transform(spend -> Response.ok(spend).build())
+            .onFailure().invoke(e -> LOG.errorf("Failed to get spend for user: %s", e.getMessage()));
+    }
+
+    @GET
+    @Path("/reports/revenue")
+    @RolesAllowed("admin")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> getRevenueByDay(@QueryParam("from") LocalDate from, @QueryParam("to") LocalDate to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new BadRequestException("from and to are required and from must not be after to");
+        }
+        LOG.infof("Received getRevenueByDay request: from=%s, to=%s", from, to);
+        return orderService.readRevenueByDay(from, to)
+            .onItem().transform(revenue -> Response.ok(revenue).build())
+            .onFailure().invoke(e -> LOG.errorf("Failed to get revenue: %s", e.getMessage()));
+    }
+
+    @GET
+    @Path("/user/stream")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<Order> streamOrdersByUser(@QueryParam("cursor") String cursor,
+            // Keyset page fetched per round trip; larger than /user (50, max 200) because nothing waits for a whole
+            // page here, and the stream keeps fetching pages until the history is exhausted
+            @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(500) int pageSize,
+            @QueryParam("status") Set<OrderStatus> statuses,
+            @QueryParam("from") LocalDateTime from,
+            @QueryParam("to") LocalDateTime to,
+            @QueryParam("include_archived") @DefaultValue("false") boolean includeArchived) {
+        String keycloakId = jwtUtil.getCurrentKeycloakUserId();
+        LOG.infof("Received streamOrdersByUser request: keycloakId=%s", keycloakId);
+        return orderService.streamByUser(
+            new OrderHistoryQuery(keycloakId, statuses, from, to, OrderCursor.decode(cursor), pageSize, includeArchived));
+    }
+
     @PUT
     @Path("/order-status")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -81,7 +240,9 @@ public class OrderController {
     public Uni<Response> updateOrderStatus(@Valid UpdateOrderStatusRequest orderStatusRequest) {
         MDC.put("orderId", orderStatusRequest.id);
         LOG.infof("Received updateOrderStatus request: orderId=%d, newStatus=%s", orderStatusRequest.id, orderStatusRequest.status);
+        // The update itself is one conditional UPDATE; the order is read afterwards so the response stays the updated order
         return orderService.updateOrderStatus(orderStatusRequest)
+            .chain(() -> orderService.read(orderStatusRequest.id))
             .onItem().invoke(updatedOrder -> LOG.infof("Order status updated: orderId=%d, newStatus=%s", updatedOrder.getId(), updatedOrder.getStatus()))
             .onItem().transform(updatedOrder -> Response.ok(updatedOrder).build())
             .onFailure().invoke(e -> LOG.errorf("Failed to update order status: %s", e.getMessage()))
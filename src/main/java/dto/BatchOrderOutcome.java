@@ -0,0 +1,32 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import enums.OrderStatus;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchOrderOutcome {
+    // Position of the order in the request
+    @JsonProperty("index")
+    public int index;
+
+    @JsonProperty("status")
+    public OrderStatus status;
+
+    @JsonProperty("order_id")
+    public Integer orderId;
+
+    @JsonProperty("error")
+    public String error;
+
+    public BatchOrderOutcome() {
+    }
+
+    public BatchOrderOutcome(int index, OrderStatus status, Integer orderId, String error) {
+        this.index = index;
+        this.status = status;
+        this.orderId = orderId;
+        this.error = error;
+    }
+}
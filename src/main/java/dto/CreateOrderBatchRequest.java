@@ -0,0 +1,20 @@
+package dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+public class CreateOrderBatchRequest {
+    @NotEmpty(message = "Batch must contain at least one order")
+    @Size(max = 500, message = "Batch must contain at most 500 orders")
+    @JsonProperty("orders")
+    public List<@Valid CreateOrderRequest> orders = new ArrayList<>();
+
+    public CreateOrderBatchRequest() {
+    }
+}
@@ -0,0 +1,27 @@
+package dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class DailyRevenueDTO {
+    @JsonProperty("date")
+    public LocalDate date;
+
+    @JsonProperty("order_count")
+    public long orderCount;
+
+    @JsonProperty("revenue")
+    public BigDecimal revenue;
+
+    public DailyRevenueDTO() {
+    }
+
+    // Used by the JPQL constructor projection
+    public DailyRevenueDTO(LocalDate date, long orderCount, BigDecimal revenue) {
+        this.date = date;
+        this.orderCount = orderCount;
+        this.revenue = revenue;
+    }
+}
@@ -0,0 +1,23 @@
+package dto;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import enums.OrderStatus;
+
+/**
+ * One page request against a user's order history; empty statuses and null dates mean no filter.
+ * Archived orders are only included when {@code includeArchived} is set.
+ */
+public record OrderHistoryQuery(String keycloakId, Set<OrderStatus> statuses, LocalDateTime from, LocalDateTime to,
+        OrderCursor after, int limit, boolean includeArchived) {
+
+    public OrderHistoryQuery(String keycloakId, Set<OrderStatus> statuses, LocalDateTime from, LocalDateTime to,
+            OrderCursor after, int limit) {
+        this(keycloakId, statuses, from, to, after, limit, false);
+    }
+
+    public OrderHistoryQuery after(OrderCursor cursor) {
+        return new OrderHistoryQuery(keycloakId, statuses, from, to, cursor, limit, includeArchived);
+    }
+}
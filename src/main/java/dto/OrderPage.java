@@ -0,0 +1,11 @@
+package dto;
+
+import java.util.List;
+
+import entities.Order;
+
+/**
+ * @param next cursor of the last order on this page, or null when there are no more orders
+ */
+public record OrderPage(List<Order> orders, OrderCursor next) {
+}
@@ -0,0 +1,21 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import enums.OrderStatus;
+
+public class OrderStatusDTO {
+    @JsonProperty("id")
+    public int id;
+
+    @JsonProperty("status")
+    public OrderStatus status;
+
+    public OrderStatusDTO() {
+    }
+
+    public OrderStatusDTO(int id, OrderStatus status) {
+        this.id = id;
+        this.status = status;
+    }
+}
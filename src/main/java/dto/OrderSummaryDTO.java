@@ -0,0 +1,44 @@
+package dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import enums.OrderStatus;
+import io.vertx.core.json.JsonArray;
+
+public class OrderSummaryDTO {
+    @JsonProperty("id")
+    public int id;
+
+    @JsonProperty("status")
+    public OrderStatus status;
+
+    @JsonProperty("order_date")
+    public LocalDateTime orderDate;
+
+    @JsonProperty("item_count")
+    public int itemCount;
+
+    @JsonProperty("total")
+    public BigDecimal total;
+
+    @JsonProperty("product_names")
+    public List<String> productNames;
+
+    public OrderSummaryDTO() {
+    }
+
+    // Used by the JPQL constructor projection
+    public OrderSummaryDTO(int id, OrderStatus status, LocalDateTime orderDate, int itemCount, BigDecimal total,
+            String productNames) {
+        this.id = id;
+        this.status = status;
+        this.orderDate = orderDate;
+        this.itemCount = itemCount;
+        this.total = total;
+        this.productNames = new JsonArray(productNames).stream().map(String.class::cast).toList();
+    }
+}
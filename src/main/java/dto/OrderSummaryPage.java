@@ -0,0 +1,9 @@
+package dto;
+
+import java.util.List;
+
+/**
+ * @param next cursor of the last summary on this page, or null when there are no more orders
+ */
+public record OrderSummaryPage(List<OrderSummaryDTO> summaries, OrderCursor next) {
+}
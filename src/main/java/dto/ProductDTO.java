@@ -1,7 +1,11 @@
 package dto;
 
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ProductDTO {
     @JsonProperty("product_id")
     public String id;
@@ -10,5 +14,5 @@ public class ProductDTO {
     @JsonProperty("description")
     public String description;
     @JsonProperty("price")
-    public Double price;
+    public BigDecimal price;
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package dto;
+
+import entities.Order;
+
+/**
+ * One request of a batch after the buyer and product lookups: either a pending order or why it could not be built.
+ */
+public record ResolvedOrder(Order order, String error) {
+}
@@ -1,13 +1,22 @@
 package dto;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import entities.Order;
+import io.smallrye.mutiny.Uni;
 
 public class SagaContext {
     public Order order;
     public boolean orderCreated = false;
     public boolean stockReserved = false;
+    // Products answered StockReservationFailed, so nothing was reserved; any other failure leaves the outcome unknown
+    public boolean reservationRefused = false;
     public boolean orderConfirmed = false;
+    // Key of a reservation sent before the order had an id (parallel mode); otherwise the order id is the key
+    public String reservationId;
     public List<ReserveStockItem> reserveItems;
+    public Uni<Object> reservation;
+    // Completed once the PENDING order is committed, or failed if the saga ends before that
+    public final CompletableFuture<Order> accepted = new CompletableFuture<>();
 }
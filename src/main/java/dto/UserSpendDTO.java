@@ -0,0 +1,22 @@
+package dto;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class UserSpendDTO {
+    @JsonProperty("order_count")
+    public long orderCount;
+
+    @JsonProperty("total")
+    public BigDecimal total;
+
+    public UserSpendDTO() {
+    }
+
+    // Used by the JPQL constructor projection; sum() is null when no order matches
+    public UserSpendDTO(long orderCount, BigDecimal total) {
+        this.orderCount = orderCount;
+        this.total = total != null ? total : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,87 @@
+package entities;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+import enums.IdempotencyStatus;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+
+/**
+ * Outcome of a create request sent with an Idempotency-Key. An IN_PROGRESS record expires after a short lease
+ * so a key held by a pod that died can be reused; a COMPLETED one is kept for the retention period.
+ */
+@Entity
+@Table(name = "App_IdempotencyKey")
+public class IdempotencyRecord {
+    @EmbeddedId
+    private Key key;
+
+    @NotNull
+    @Column(name = "request_hash")
+    private String requestHash;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private IdempotencyStatus status;
+
+    @Column(name = "order_id")
+    private Integer orderId;
+
+    @NotNull
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @NotNull
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public IdempotencyStatus getStatus() {
+        return status;
+    }
+
+    public Integer getOrderId() {
+        return orderId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Embeddable
+    public static class Key implements Serializable {
+        @Column(name = "keycloak_id")
+        private String keycloakId;
+
+        @Column(name = "idempotency_key")
+        private String idempotencyKey;
+
+        public Key() {
+        }
+
+        public Key(String keycloakId, String idempotencyKey) {
+            this.keycloakId = keycloakId;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other
+                    && Objects.equals(keycloakId, other.keycloakId)
+                    && Objects.equals(idempotencyKey, other.idempotencyKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(keycloakId, idempotencyKey);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package entities;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,16 +12,19 @@ import dto.BuyerDTO;
 import enums.OrderStatus;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import org.hibernate.annotations.BatchSize;
 
 @Entity
 @Table(name = "App_Order")
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "App_Order_seq", allocationSize = 50)
     @JsonProperty("id")
     private int id;
 
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 100)
     @NotEmpty(message = "Order must contain at least one order item")
     @JsonManagedReference
     @JsonProperty("order_items")
@@ -39,6 +43,15 @@ public class Order {
     @JsonProperty("keycloak_id")
     private String keycloakId;
 
+    // Stored with the order so reports and lists do not have to load the items
+    @Column(nullable = false, precision = 14, scale = 2)
+    @JsonProperty("total")
+    private BigDecimal total;
+
+    @Column(name = "item_count", nullable = false)
+    @JsonProperty("item_count")
+    private int itemCount;
+
     @Transient
     @JsonProperty("buyer")
     private BuyerDTO buyer;
@@ -76,6 +89,25 @@ public class Order {
         this.orderDate = orderDate;
     }
 
+    public Order(int id, String keycloakId, List<OrderItem> orderItems, OrderStatus status, LocalDateTime orderDate,
+            BigDecimal total, int itemCount) {
+        this.id = id;
+        this.keycloakId = keycloakId;
+        this.orderItems = orderItems;
+        this.status = status;
+        this.orderDate = orderDate;
+        this.total = total;
+        this.itemCount = itemCount;
+    }
+
+    @PrePersist
+    void computeTotals() {
+        this.total = orderItems.stream()
+            .map(OrderItem::getLineTotal)
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        this.itemCount = orderItems.size();
+    }
+
     public int getId() {
         return id;
     }
@@ -100,6 +132,14 @@ public class Order {
         return orderDate;
     }
 
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
     public void setBuyer(BuyerDTO buyer) {
         this.buyer = buyer;
     }
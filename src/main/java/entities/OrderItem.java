@@ -1,5 +1,7 @@
 package entities;
 
+import java.math.BigDecimal;
+
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -10,7 +12,8 @@ import jakarta.validation.constraints.*;
 @Table(name = "App_OrderItem")
 public class OrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_item_seq")
+    @SequenceGenerator(name = "order_item_seq", sequenceName = "App_OrderItem_seq", allocationSize = 100)
     @JsonProperty("id")
     private int id;
 
@@ -32,8 +35,9 @@ public class OrderItem {
 
     @Positive(message = "Product price must be positive")
     @NotNull(message = "Product price must not be null")
+    @Column(precision = 12, scale = 2)
     @JsonProperty("price")
-    private Double price;
+    private BigDecimal price;
 
     @NotNull
     @Size(max = 255, message = "Product description must be less than 255 characters")
@@ -48,7 +52,7 @@ public class OrderItem {
     public OrderItem() {
     }
 
-    public OrderItem(String productId, String name, double price, String description, int quantity) { // Updated constructor
+    public OrderItem(String productId, String name, BigDecimal price, String description, int quantity) { // Updated constructor
         this.productId = productId;
         this.name = name;
         this.price = price;
@@ -56,16 +60,26 @@ public class OrderItem {
         this.quantity = quantity;
     }
 
-    public OrderItem(String name, double price, String description, int quantity) {
+    public OrderItem(String name, BigDecimal price, String description, int quantity) {
+        this.name = name;
+        this.price = price;
+        this.description = description;
+        this.quantity = quantity;
+    }
+
+    public OrderItem(int id, Order order, String name, BigDecimal price, String description, int quantity) {
+        this.id = id;
+        this.order = order;
         this.name = name;
         this.price = price;
         this.description = description;
         this.quantity = quantity;
     }
 
-    public OrderItem(int id, Order order, String name, double price, String description, int quantity) {
+    public OrderItem(int id, Order order, String productId, String name, BigDecimal price, String description, int quantity) {
         this.id = id;
         this.order = order;
+        this.productId = productId;
         this.name = name;
         this.price = price;
         this.description = description;
@@ -88,10 +102,14 @@ public class OrderItem {
         return name;
     }
 
-    public double getPrice() {
+    public BigDecimal getPrice() {
         return price;
     }
 
+    public BigDecimal getLineTotal() {
+        return price.multiply(BigDecimal.valueOf(quantity));
+    }
+
     public String getDescription() {
         return description;
     }
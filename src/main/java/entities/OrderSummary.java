@@ -0,0 +1,73 @@
+package entities;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import enums.OrderStatus;
+import io.vertx.core.json.JsonArray;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+
+/**
+ * Denormalized row per order for the list endpoints; written in the same transaction as the order it mirrors.
+ */
+@Entity
+@Table(name = "App_OrderSummary")
+public class OrderSummary {
+    public static final int PRODUCT_NAME_LIMIT = 3;
+
+    @Id
+    @Column(name = "order_id")
+    private int orderId;
+
+    @NotNull
+    @Column(name = "keycloak_id")
+    private String keycloakId;
+
+    @NotNull
+    @Column(name = "order_date")
+    private LocalDateTime orderDate;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private OrderStatus status;
+
+    @Column(name = "item_count")
+    private int itemCount;
+
+    @Column(precision = 14, scale = 2)
+    private BigDecimal total;
+
+    // JSON array of the first PRODUCT_NAME_LIMIT product names
+    @NotNull
+    @Column(name = "product_names", columnDefinition = "text")
+    private String productNames;
+
+    public OrderSummary() {
+    }
+
+    public static OrderSummary of(Order order) {
+        OrderSummary summary = new OrderSummary();
+        summary.orderId = order.getId();
+        summary.keycloakId = order.getKeycloakId();
+        summary.orderDate = order.getOrderDate();
+        summary.status = order.getStatus();
+        summary.itemCount = order.getItemCount();
+        summary.total = order.getTotal();
+        List<String> names = order.getOrderItems().stream()
+            .limit(PRODUCT_NAME_LIMIT)
+            .map(OrderItem::getName)
+            .toList();
+        summary.productNames = new JsonArray(names).encode();
+        return summary;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+}
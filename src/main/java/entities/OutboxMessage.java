@@ -0,0 +1,86 @@
+package entities;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+
+@Entity
+@Table(name = "App_OutboxMessage")
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_message_seq")
+    @SequenceGenerator(name = "outbox_message_seq", sequenceName = "App_OutboxMessage_seq", allocationSize = 100)
+    private long id;
+
+    @Column(name = "aggregate_id", nullable = false)
+    private int aggregateId;
+
+    @NotNull
+    private String channel;
+
+    @NotNull
+    @Column(name = "correlation_id")
+    private String correlationId;
+
+    @Column(name = "reply_to")
+    private String replyTo;
+
+    @NotNull
+    @Column(columnDefinition = "text")
+    private String payload;
+
+    @NotNull
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "published_at")
+    private LocalDateTime publishedAt;
+
+    public OutboxMessage() {
+    }
+
+    public OutboxMessage(String channel, String correlationId, String replyTo, String payload) {
+        this.channel = channel;
+        this.correlationId = correlationId;
+        this.replyTo = replyTo;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getAggregateId() {
+        return aggregateId;
+    }
+
+    public void setAggregateId(int aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+}
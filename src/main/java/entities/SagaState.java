@@ -0,0 +1,79 @@
+package entities;
+
+import java.time.LocalDateTime;
+
+import enums.SagaStep;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+
+@Entity
+@Table(name = "App_SagaState")
+public class SagaState {
+    @Id
+    @Column(name = "order_id")
+    private int orderId;
+
+    @NotNull(message = "Saga step must not be null")
+    @Enumerated(EnumType.STRING)
+    private SagaStep step;
+
+    @Column(name = "reserved_items", columnDefinition = "text")
+    private String reservedItems;
+
+    @Column(name = "reservation_id")
+    private String reservationId;
+
+    private int attempts;
+
+    @NotNull
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @NotNull
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public SagaState() {
+    }
+
+    public SagaState(int orderId, SagaStep step, String reservedItems) {
+        this(orderId, step, reservedItems, null);
+    }
+
+    public SagaState(int orderId, SagaStep step, String reservedItems, String reservationId) {
+        this.orderId = orderId;
+        this.step = step;
+        this.reservedItems = reservedItems;
+        this.reservationId = reservationId;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public SagaStep getStep() {
+        return step;
+    }
+
+    public String getReservedItems() {
+        return reservedItems;
+    }
+
+    public String getReservationId() {
+        return reservationId;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
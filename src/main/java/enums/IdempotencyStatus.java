@@ -0,0 +1,5 @@
+package enums;
+
+public enum IdempotencyStatus {
+    IN_PROGRESS, COMPLETED
+}
@@ -1,5 +1,43 @@
 package enums;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum OrderStatus {
-    PENDING, SHIPPED, DELIVERED, CANCELLED, CONFIRMED, FAILED
+    PENDING, SHIPPED, DELIVERED, CANCELLED, CONFIRMED, FAILED;
+
+    /**
+     * Orders counted as spend and revenue: confirmed and not cancelled.
+     */
+    public static final Set<OrderStatus> BILLED = EnumSet.of(CONFIRMED, SHIPPED, DELIVERED);
+
+    public Set<OrderStatus> nextStatuses() {
+        return switch (this) {
+            case PENDING -> EnumSet.of(CONFIRMED, FAILED, CANCELLED);
+            case CONFIRMED -> EnumSet.of(SHIPPED, CANCELLED);
+            case SHIPPED -> EnumSet.of(DELIVERED);
+            case DELIVERED, CANCELLED, FAILED -> EnumSet.noneOf(OrderStatus.class);
+        };
+    }
+
+    public boolean isTerminal() {
+        return nextStatuses().isEmpty();
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return nextStatuses().contains(target);
+    }
+
+    /**
+     * The statuses an order may be in to move to {@code target}; used as the guard of a conditional UPDATE.
+     */
+    public static Set<OrderStatus> sourcesOf(OrderStatus target) {
+        Set<OrderStatus> sources = EnumSet.noneOf(OrderStatus.class);
+        for (OrderStatus status : values()) {
+            if (status.canTransitionTo(target)) {
+                sources.add(status);
+            }
+        }
+        return sources;
+    }
 }
@@ -0,0 +1,9 @@
+package enums;
+
+public enum SagaStep {
+    PENDING, RESERVING, RESERVED, CONFIRMED, COMPENSATED;
+
+    public boolean isTerminal() {
+        return this == CONFIRMED || this == COMPENSATED;
+    }
+}
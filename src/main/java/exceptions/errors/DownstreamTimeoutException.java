@@ -0,0 +1,10 @@
+package exceptions.errors;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+
+public class DownstreamTimeoutException extends WebApplicationException {
+    public DownstreamTimeoutException(String operation) {
+        super("Timed out waiting for " + operation + " reply", Response.Status.GATEWAY_TIMEOUT);
+    }
+}
@@ -0,0 +1,10 @@
+package exceptions.errors;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+
+public class IdempotencyKeyInProgressException extends WebApplicationException {
+    public IdempotencyKeyInProgressException(String idempotencyKey) {
+        super("A request with Idempotency-Key " + idempotencyKey + " is still being processed", Response.Status.CONFLICT);
+    }
+}
@@ -0,0 +1,9 @@
+package exceptions.errors;
+
+import jakarta.ws.rs.WebApplicationException;
+
+public class IdempotencyKeyMismatchException extends WebApplicationException {
+    public IdempotencyKeyMismatchException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used for a different request", 422);
+    }
+}
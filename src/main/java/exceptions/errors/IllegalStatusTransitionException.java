@@ -0,0 +1,11 @@
+package exceptions.errors;
+
+import enums.OrderStatus;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+
+public class IllegalStatusTransitionException extends WebApplicationException {
+    public IllegalStatusTransitionException(int id, OrderStatus current, OrderStatus target) {
+        super("Order with id " + id + " cannot move from " + current + " to " + target, Response.Status.CONFLICT);
+    }
+}
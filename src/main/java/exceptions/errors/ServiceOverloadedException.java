@@ -0,0 +1,17 @@
+package exceptions.errors;
+
+import java.time.Duration;
+
+import exceptions.ErrorResponse;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+public class ServiceOverloadedException extends WebApplicationException {
+    public ServiceOverloadedException(String message, Response.Status status, Duration retryAfter) {
+        super(message, Response.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Math.max(1, (retryAfter.toMillis() + 999) / 1000))
+                .entity(new ErrorResponse(message))
+                .build());
+    }
+}
@@ -0,0 +1,14 @@
+package interfaces;
+
+import java.time.LocalDateTime;
+
+import entities.IdempotencyRecord;
+import io.smallrye.mutiny.Uni;
+
+public interface IIdempotencyRepository {
+    Uni<Boolean> claim(String keycloakId, String idempotencyKey, String requestHash, LocalDateTime leaseUntil);
+    Uni<IdempotencyRecord> find(String keycloakId, String idempotencyKey);
+    Uni<Void> complete(String keycloakId, String idempotencyKey, int orderId, LocalDateTime expiresAt);
+    Uni<Void> release(String keycloakId, String idempotencyKey);
+    Uni<Integer> deleteExpired(LocalDateTime now);
+}
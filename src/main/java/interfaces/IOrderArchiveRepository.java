@@ -0,0 +1,21 @@
+package interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import dto.DailyRevenueDTO;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.UserSpendDTO;
+import entities.Order;
+import enums.OrderStatus;
+import io.smallrye.mutiny.Uni;
+
+public interface IOrderArchiveRepository {
+    Uni<Integer> archive(LocalDateTime placedBefore, Collection<OrderStatus> statuses, int limit);
+    Uni<Order> read(int id);
+    Uni<OrderPage> readPageByUser(OrderHistoryQuery query);
+    Uni<UserSpendDTO> readSpendByUser(String keycloakId, Collection<OrderStatus> statuses, LocalDateTime from, LocalDateTime to);
+    Uni<List<DailyRevenueDTO>> readRevenueByDay(Collection<OrderStatus> statuses, LocalDateTime from, LocalDateTime to);
+}
@@ -1,14 +1,26 @@
 package interfaces;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import dto.DailyRevenueDTO;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.UserSpendDTO;
 import entities.Order;
+import enums.OrderStatus;
 import io.smallrye.mutiny.Uni;
 
 public interface IOrderRepository {
     Uni<Order> create(Order order);
     Uni<Order> read(int id);
-    Uni<List<Order>> readAllByUser(String keycloakId);
-    Uni<Order> update(Order order);
+    Uni<Order> read(int id, boolean includeArchived);
+    Uni<OrderPage> readPageByUser(OrderHistoryQuery query);
+    Uni<OrderStatus> readStatus(int id);
+    Uni<UserSpendDTO> readSpendByUser(String keycloakId, LocalDateTime from, LocalDateTime to);
+    Uni<List<DailyRevenueDTO>> readRevenueByDay(LocalDateTime from, LocalDateTime to);
+    Uni<Integer> updateStatus(int id, Collection<OrderStatus> from, OrderStatus to);
+    Uni<Integer> updateStatus(Collection<Integer> ids, Collection<OrderStatus> from, OrderStatus to);
     Uni<Void> delete(int id);
 }
\ No newline at end of file
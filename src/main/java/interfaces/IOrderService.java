@@ -1,16 +1,32 @@
 package interfaces;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import dto.CreateOrderRequest;
+import dto.DailyRevenueDTO;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.OrderSummaryPage;
 import dto.UpdateOrderStatusRequest;
+import dto.UserSpendDTO;
 import entities.Order;
+import enums.OrderStatus;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 
 public interface IOrderService {
-    Uni<Order> createPendingOrder(CreateOrderRequest orderRequest, String keycloakId);
+    Uni<Order> resolvePendingOrder(CreateOrderRequest orderRequest, String keycloakId);
     Uni<Order> read(int id);
-    Uni<List<Order>> readAllByUser(String keycloakId);
-    Uni<Order> updateOrderStatus(UpdateOrderStatusRequest orderStatusRequest);
+    Uni<Order> read(int id, boolean includeArchived);
+    Uni<OrderStatus> readStatus(int id);
+    Uni<OrderPage> readPageByUser(OrderHistoryQuery query);
+    Multi<Order> streamByUser(OrderHistoryQuery query);
+    Uni<OrderSummaryPage> readSummariesByUser(OrderHistoryQuery query);
+    Uni<UserSpendDTO> readSpendByUser(String keycloakId, LocalDateTime from, LocalDateTime to);
+    Uni<List<DailyRevenueDTO>> readRevenueByDay(LocalDate from, LocalDate to);
+    Uni<Void> updateOrderStatus(UpdateOrderStatusRequest orderStatusRequest);
+    Uni<Integer> updateOrderStatuses(List<Integer> ids, OrderStatus status);
     Uni<Void> delete(int id);
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package interfaces;
+
+import java.util.Collection;
+
+import dto.OrderHistoryQuery;
+import dto.OrderSummaryPage;
+import entities.Order;
+import enums.OrderStatus;
+import io.smallrye.mutiny.Uni;
+
+public interface IOrderSummaryRepository {
+    Uni<Void> create(Order order);
+    Uni<Integer> updateStatus(Collection<Integer> orderIds, Collection<OrderStatus> from, OrderStatus to);
+    Uni<Void> delete(int orderId);
+    Uni<OrderSummaryPage> readPageByUser(OrderHistoryQuery query);
+}
@@ -0,0 +1,14 @@
+package interfaces;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import entities.OutboxMessage;
+import io.smallrye.mutiny.Uni;
+
+public interface IOutboxRepository {
+    Uni<Void> create(List<OutboxMessage> messages);
+    Uni<List<OutboxMessage>> lockUnpublished(int limit);
+    Uni<Integer> markPublished(List<Long> ids);
+    Uni<Integer> deletePublishedBefore(LocalDateTime cutoff);
+}
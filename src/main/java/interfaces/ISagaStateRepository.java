@@ -0,0 +1,19 @@
+package interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import entities.SagaState;
+import enums.SagaStep;
+import io.smallrye.mutiny.Uni;
+
+public interface ISagaStateRepository {
+    Uni<SagaState> create(SagaState sagaState);
+    Uni<Void> updateStep(int orderId, SagaStep step);
+    Uni<Void> updateSteps(Collection<Integer> orderIds, SagaStep step);
+    Uni<Void> updateReservation(int orderId, String reservationId, String reservedItems);
+    Uni<List<SagaState>> findStale(LocalDateTime updatedBefore, int maxAttempts, int limit);
+    Uni<Long> countIncomplete();
+    Uni<Boolean> claim(int orderId, LocalDateTime seenUpdatedAt);
+}
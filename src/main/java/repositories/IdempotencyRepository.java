@@ -0,0 +1,83 @@
+package repositories;
+
+import java.time.LocalDateTime;
+
+import entities.IdempotencyRecord;
+import enums.IdempotencyStatus;
+import interfaces.IIdempotencyRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+
+@ApplicationScoped
+public class IdempotencyRepository implements IIdempotencyRepository {
+
+    private static final Logger LOG = Logger.getLogger(IdempotencyRepository.class);
+
+    SessionFactory sessionFactory;
+    public IdempotencyRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Uni<Boolean> claim(String keycloakId, String idempotencyKey, String requestHash, LocalDateTime leaseUntil) {
+        // One statement, so two requests with the same key cannot both claim it; an expired record is taken over
+        return sessionFactory.withTransaction(session ->
+            session.createNativeQuery(
+                "INSERT INTO App_IdempotencyKey (keycloak_id, idempotency_key, request_hash, status, order_id, created_at, expires_at)"
+                    + " VALUES (:keycloakId, :key, :hash, :status, NULL, :now, :leaseUntil)"
+                    + " ON CONFLICT (keycloak_id, idempotency_key) DO UPDATE SET request_hash = excluded.request_hash,"
+                    + " status = excluded.status, order_id = NULL, created_at = excluded.created_at,"
+                    + " expires_at = excluded.expires_at"
+                    + " WHERE App_IdempotencyKey.expires_at < excluded.created_at")
+                .setParameter("keycloakId", keycloakId)
+                .setParameter("key", idempotencyKey)
+                .setParameter("hash", requestHash)
+                .setParameter("status", IdempotencyStatus.IN_PROGRESS.name())
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("leaseUntil", leaseUntil)
+                .executeUpdate()
+        ).map(claimed -> claimed > 0);
+    }
+
+    @Override
+    public Uni<IdempotencyRecord> find(String keycloakId, String idempotencyKey) {
+        return sessionFactory.withStatelessSession(session ->
+            session.get(IdempotencyRecord.class, new IdempotencyRecord.Key(keycloakId, idempotencyKey)));
+    }
+
+    @Override
+    public Uni<Void> complete(String keycloakId, String idempotencyKey, int orderId, LocalDateTime expiresAt) {
+        LOG.debugf("Completing idempotency key for orderId=%d", orderId);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE IdempotencyRecord r SET r.status = :status, r.orderId = :orderId, r.expiresAt = :expiresAt"
+                    + " WHERE r.key = :key")
+                .setParameter("status", IdempotencyStatus.COMPLETED)
+                .setParameter("orderId", orderId)
+                .setParameter("expiresAt", expiresAt)
+                .setParameter("key", new IdempotencyRecord.Key(keycloakId, idempotencyKey))
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> release(String keycloakId, String idempotencyKey) {
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM IdempotencyRecord r WHERE r.key = :key AND r.status = :status")
+                .setParameter("key", new IdempotencyRecord.Key(keycloakId, idempotencyKey))
+                .setParameter("status", IdempotencyStatus.IN_PROGRESS)
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Integer> deleteExpired(LocalDateTime now) {
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+                .setParameter("now", now)
+                .executeUpdate()
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import dto.DailyRevenueDTO;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.UserSpendDTO;
+import entities.Order;
+import enums.OrderStatus;
+import interfaces.IOrderArchiveRepository;
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+import utils.ReadRouting;
+
+/**
+ * Finished orders moved out of the live tables into the monthly partitioned archive (see V6__order_archive.sql).
+ * Archived orders are never written again, so reads go to the replica whenever it is enabled.
+ */
+@ApplicationScoped
+public class OrderArchiveRepository implements IOrderArchiveRepository {
+
+    private static final Logger LOG = Logger.getLogger(OrderArchiveRepository.class);
+
+    SessionFactory sessionFactory;
+    SqlOrderReader primaryReader;
+    SqlOrderReader replicaReader;
+    ReadRouting readRouting;
+    public OrderArchiveRepository(SessionFactory sessionFactory, Pool primary,
+            @ReactiveDataSource("replica") Pool replica, ReadRouting readRouting) {
+        this.sessionFactory = sessionFactory;
+        this.primaryReader = new SqlOrderReader(primary, "archive", "App_OrderArchive", "App_OrderItemArchive");
+        this.replicaReader = new SqlOrderReader(replica, "replica archive", "App_OrderArchive", "App_OrderItemArchive");
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public Uni<Integer> archive(LocalDateTime placedBefore, Collection<OrderStatus> statuses, int limit) {
+        String statusList = statuses.stream().map(OrderStatus::name).collect(Collectors.joining(","));
+        LOG.debugf("Archiving up to %d orders placed before %s in %s", limit, placedBefore, statusList);
+        return sessionFactory.withTransaction(session ->
+            session.createNativeQuery("SELECT App_archive_orders(:cutoff, :statuses, :batchSize)", Integer.class)
+                .setParameter("cutoff", placedBefore)
+                .setParameter("statuses", statusList)
+                .setParameter("batchSize", limit)
+                .getSingleResult()
+        );
+    }
+
+    @Override
+    public Uni<Order> read(int id) {
+        return readRouting.read("read-archive", false, () -> replicaReader.read(id), () -> primaryReader.read(id));
+    }
+
+    @Override
+    public Uni<OrderPage> readPageByUser(OrderHistoryQuery query) {
+        return readRouting.read("read-archive-page-by-user", false,
+            () -> replicaReader.readPageByUser(query), () -> primaryReader.readPageByUser(query));
+    }
+
+    @Override
+    public Uni<UserSpendDTO> readSpendByUser(String keycloakId, Collection<OrderStatus> statuses, LocalDateTime from,
+            LocalDateTime to) {
+        return readRouting.read("read-archive-spend-by-user", false,
+            () -> replicaReader.readSpendByUser(keycloakId, statuses, from, to),
+            () -> primaryReader.readSpendByUser(keycloakId, statuses, from, to));
+    }
+
+    @Override
+    public Uni<List<DailyRevenueDTO>> readRevenueByDay(Collection<OrderStatus> statuses, LocalDateTime from,
+            LocalDateTime to) {
+        return readRouting.read("read-archive-revenue-by-day", false,
+            () -> replicaReader.readRevenueByDay(statuses, from, to),
+            () -> primaryReader.readRevenueByDay(statuses, from, to));
+    }
+}
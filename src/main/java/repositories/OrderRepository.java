@@ -1,30 +1,72 @@
 package repositories;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
+import dto.DailyRevenueDTO;
+import dto.OrderCursor;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.UserSpendDTO;
 import entities.Order;
+import enums.OrderStatus;
 import exceptions.errors.OrderNotFoundException;
+import interfaces.IOrderArchiveRepository;
 import interfaces.IOrderRepository;
+import interfaces.IOrderSummaryRepository;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.hibernate.reactive.mutiny.Mutiny.SelectionQuery;
 import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
 import org.jboss.logging.Logger;
+import utils.ReadRouting;
 
 @ApplicationScoped
 public class OrderRepository implements IOrderRepository {
 
     private static final Logger LOG = Logger.getLogger(OrderRepository.class);
+    private static final Comparator<Order> NEWEST_FIRST = Comparator.comparing(Order::getOrderDate)
+        .thenComparing(Order::getId).reversed();
 
     SessionFactory sessionFactory;
-    public OrderRepository(SessionFactory sessionFactory) {
+    ReplicaOrderReader replicaReader;
+    ReadRouting readRouting;
+    IOrderSummaryRepository summaryRepository;
+    IOrderArchiveRepository archiveRepository;
+    boolean archiveInReports;
+    public OrderRepository(SessionFactory sessionFactory, ReplicaOrderReader replicaReader, ReadRouting readRouting,
+            IOrderSummaryRepository summaryRepository, IOrderArchiveRepository archiveRepository,
+            @ConfigProperty(name = "amazoff.archive.include-in-reports", defaultValue = "true") boolean archiveInReports) {
         this.sessionFactory = sessionFactory;
+        this.replicaReader = replicaReader;
+        this.readRouting = readRouting;
+        this.summaryRepository = summaryRepository;
+        this.archiveRepository = archiveRepository;
+        this.archiveInReports = archiveInReports;
     }
 
     @Override
     public Uni<Order> create(Order order) {
         LOG.debug("Persisting new order");
-        return sessionFactory.withTransaction(session -> session.persist(order).replaceWith(order))
-            .onItem().invoke(o -> LOG.debugf("Order persisted: orderId=%d", o.getId()))
+        return sessionFactory.withTransaction(session -> session.persist(order)
+                .call(() -> summaryRepository.create(order))
+                .replaceWith(order))
+            .onItem().invoke(o -> {
+                LOG.debugf("Order persisted: orderId=%d", o.getId());
+                readRouting.userWrote(o.getKeycloakId());
+                readRouting.orderWritten(o.getId());
+            })
             .onFailure().invoke(e -> {
                 LOG.errorf("Failed to create order: %s", e.getMessage());
                 throw new RuntimeException("Failed to create order: " + e.getMessage(), e);
@@ -33,6 +75,20 @@ public class OrderRepository implements IOrderRepository {
 
     @Override
     public Uni<Order> read(int id) {
+        return read(id, false);
+    }
+
+    @Override
+    public Uni<Order> read(int id, boolean includeArchived) {
+        Uni<Order> live = readRouting.read("read", readRouting.orderRecentlyWritten(id),
+            () -> replicaReader.read(id), () -> readFromPrimary(id));
+        if (includeArchived) {
+            live = live.onItem().ifNull().switchTo(() -> archiveRepository.read(id));
+        }
+        return live.onItem().ifNull().failWith(() -> new OrderNotFoundException(id));
+    }
+
+    private Uni<Order> readFromPrimary(int id) {
         LOG.debugf("Fetching order from DB: orderId=%d", id);
         return sessionFactory.withSession(session ->
             session.createQuery(
@@ -41,32 +97,203 @@ public class OrderRepository implements IOrderRepository {
                 .getSingleResultOrNull()
         ).onItem().invoke(o -> {
             if (o != null) LOG.debugf("Order fetched: orderId=%d", o.getId());
-        }).onItem().ifNull().failWith(() -> new OrderNotFoundException(id));
+        });
     }
 
     @Override
-    public Uni<List<Order>> readAllByUser(String keycloakId) {
-        LOG.debugf("Fetching all orders for user: keycloakId=%s", keycloakId);
+    public Uni<OrderPage> readPageByUser(OrderHistoryQuery query) {
+        Uni<OrderPage> live = readRouting.read("read-page-by-user", readRouting.userRecentlyWrote(query.keycloakId()),
+            () -> replicaReader.readPageByUser(query), () -> readPageFromPrimary(query));
+        if (!query.includeArchived()) {
+            return live;
+        }
+        return live.chain(livePage -> archiveRepository.readPageByUser(query)
+            .map(archivePage -> merge(livePage, archivePage, query.limit())));
+    }
+
+    /**
+     * Archiving only moves old finished orders, so an unfinished order can be older than an archived one and
+     * the two pages interleave. Both start at the same cursor; the newest {@code limit} of them form the page.
+     */
+    private static OrderPage merge(OrderPage live, OrderPage archived, int limit) {
+        List<Order> merged = Stream.concat(live.orders().stream(), archived.orders().stream())
+            .sorted(NEWEST_FIRST)
+            .toList();
+        boolean hasMore = merged.size() > limit || live.next() != null || archived.next() != null;
+        List<Order> page = merged.size() > limit ? merged.subList(0, limit) : merged;
+        return new OrderPage(page, hasMore && !page.isEmpty() ? OrderCursor.of(page.get(page.size() - 1)) : null);
+    }
+
+    private Uni<OrderPage> readPageFromPrimary(OrderHistoryQuery query) {
+        LOG.debugf("Fetching order page for user: keycloakId=%s, after=%s, limit=%d",
+            query.keycloakId(), query.after(), query.limit());
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder hql = new StringBuilder("SELECT o.id FROM Order o WHERE o.keycloakId = :keycloakId");
+        parameters.put("keycloakId", query.keycloakId());
+        if (query.statuses() != null && !query.statuses().isEmpty()) {
+            hql.append(" AND o.status IN :statuses");
+            parameters.put("statuses", query.statuses());
+        }
+        if (query.from() != null) {
+            hql.append(" AND o.orderDate >= :from");
+            parameters.put("from", query.from());
+        }
+        if (query.to() != null) {
+            hql.append(" AND o.orderDate < :to");
+            parameters.put("to", query.to());
+        }
+        if (query.after() != null) {
+            // Keyset condition: strictly after the cursor in (orderDate DESC, id DESC) order
+            hql.append(" AND (o.orderDate < :afterDate OR (o.orderDate = :afterDate AND o.id < :afterId))");
+            parameters.put("afterDate", query.after().orderDate());
+            parameters.put("afterId", query.after().id());
+        }
+        hql.append(" ORDER BY o.orderDate DESC, o.id DESC");
+
+        return sessionFactory.withSession(session -> {
+            SelectionQuery<Integer> idQuery = session.createSelectionQuery(hql.toString(), Integer.class);
+            parameters.forEach(idQuery::setParameter);
+            // One extra row tells whether another page exists without a COUNT
+            return idQuery.setMaxResults(query.limit() + 1).getResultList()
+                .chain(ids -> {
+                    boolean hasMore = ids.size() > query.limit();
+                    List<Integer> pageIds = hasMore ? ids.subList(0, query.limit()) : ids;
+                    if (pageIds.isEmpty()) {
+                        return Uni.createFrom().item(new OrderPage(List.of(), null));
+                    }
+                    return session.createSelectionQuery("FROM Order o WHERE o.id IN :ids", Order.class)
+                        .setParameter("ids", pageIds)
+                        .getResultList()
+                        .call(OrderRepository::fetchItems)
+                        .map(orders -> {
+                            List<Order> page = orders.stream().sorted(NEWEST_FIRST).toList();
+                            return new OrderPage(page, hasMore ? OrderCursor.of(page.get(page.size() - 1)) : null);
+                        });
+                });
+        }).onItem().invoke(page -> LOG.debugf("Fetched %d orders for user: keycloakId=%s",
+            page.orders().size(), query.keycloakId()));
+    }
+
+    /**
+     * Loads the items of all given orders with batched IN queries instead of a join fetch, so order columns
+     * are not repeated once per item. The first fetch initializes up to the @BatchSize of collections at once;
+     * the following ones are already loaded and return without a query.
+     */
+    private static Uni<Void> fetchItems(List<Order> orders) {
+        return Multi.createFrom().iterable(orders)
+            .onItem().transformToUniAndConcatenate(order -> Mutiny.fetch(order.getOrderItems()))
+            .collect().last()
+            .replaceWithVoid();
+    }
+
+    @Override
+    public Uni<OrderStatus> readStatus(int id) {
         return sessionFactory.withSession(session ->
-            session.createQuery(
-                "SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.orderItems WHERE o.keycloakId = :keycloakId", Order.class)
-                .setParameter("keycloakId", keycloakId)
-                .getResultList()
-        ).onItem().invoke(list -> LOG.debugf("Fetched %d orders for user: keycloakId=%s", list.size(), keycloakId))
-        .onFailure().invoke(e -> {
-            LOG.errorf("Failed to retrieve orders: %s", e.getMessage());
-            throw new RuntimeException("Failed to retrieve orders: " + e.getMessage(), e);
+            session.createSelectionQuery("SELECT o.status FROM Order o WHERE o.id = :id", OrderStatus.class)
+                .setParameter("id", id)
+                .getSingleResultOrNull()
+        );
+    }
+
+    /**
+     * Archived orders are finished orders that still count, so the reports add the archive to the live table.
+     */
+    @Override
+    public Uni<UserSpendDTO> readSpendByUser(String keycloakId, LocalDateTime from, LocalDateTime to) {
+        Uni<UserSpendDTO> live = readLiveSpendByUser(keycloakId, from, to);
+        if (!archiveInReports) {
+            return live;
+        }
+        return live.chain(liveSpend -> archiveRepository.readSpendByUser(keycloakId, OrderStatus.BILLED, from, to)
+            .map(archived -> new UserSpendDTO(liveSpend.orderCount + archived.orderCount,
+                liveSpend.total.add(archived.total))));
+    }
+
+    private Uni<UserSpendDTO> readLiveSpendByUser(String keycloakId, LocalDateTime from, LocalDateTime to) {
+        LOG.debugf("Summing spend for user: keycloakId=%s, from=%s, to=%s", keycloakId, from, to);
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder hql = new StringBuilder(
+            "SELECT new dto.UserSpendDTO(count(o), sum(o.total)) FROM Order o"
+                + " WHERE o.keycloakId = :keycloakId AND o.status IN :statuses");
+        parameters.put("keycloakId", keycloakId);
+        parameters.put("statuses", OrderStatus.BILLED);
+        if (from != null) {
+            hql.append(" AND o.orderDate >= :from");
+            parameters.put("from", from);
+        }
+        if (to != null) {
+            hql.append(" AND o.orderDate < :to");
+            parameters.put("to", to);
+        }
+        return sessionFactory.withStatelessSession(session -> {
+            SelectionQuery<UserSpendDTO> query = session.createSelectionQuery(hql.toString(), UserSpendDTO.class);
+            parameters.forEach(query::setParameter);
+            return query.getSingleResult();
         });
     }
 
     @Override
-    public Uni<Order> update(Order order) {
-        LOG.debugf("Updating order: orderId=%d", order.getId());
-        return sessionFactory.withTransaction(session -> 
-            session.find(Order.class, order.getId())
-                .onItem().ifNull().failWith(() -> new OrderNotFoundException(order.getId()))
-                .onItem().ifNotNull().transformToUni(found -> session.merge(order))
-        ).onItem().invoke(o -> LOG.debugf("Order updated: orderId=%d", o.getId()));
+    public Uni<List<DailyRevenueDTO>> readRevenueByDay(LocalDateTime from, LocalDateTime to) {
+        Uni<List<DailyRevenueDTO>> live = readLiveRevenueByDay(from, to);
+        if (!archiveInReports) {
+            return live;
+        }
+        return live.chain(liveDays -> archiveRepository.readRevenueByDay(OrderStatus.BILLED, from, to)
+            .map(archivedDays -> mergeDays(liveDays, archivedDays)));
+    }
+
+    // A day can have orders in both tables while it is being archived
+    private static List<DailyRevenueDTO> mergeDays(List<DailyRevenueDTO> live, List<DailyRevenueDTO> archived) {
+        Map<LocalDate, DailyRevenueDTO> byDay = new TreeMap<>();
+        Stream.concat(live.stream(), archived.stream()).forEach(day -> byDay.merge(day.date, day,
+            (a, b) -> new DailyRevenueDTO(a.date, a.orderCount + b.orderCount, a.revenue.add(b.revenue))));
+        return new ArrayList<>(byDay.values());
+    }
+
+    private Uni<List<DailyRevenueDTO>> readLiveRevenueByDay(LocalDateTime from, LocalDateTime to) {
+        LOG.debugf("Summing revenue per day: from=%s, to=%s", from, to);
+        return sessionFactory.withStatelessSession(session ->
+            session.createSelectionQuery(
+                "SELECT new dto.DailyRevenueDTO(cast(o.orderDate as LocalDate), count(o), sum(o.total))"
+                    + " FROM Order o WHERE o.status IN :statuses AND o.orderDate >= :from AND o.orderDate < :to"
+                    + " GROUP BY cast(o.orderDate as LocalDate) ORDER BY cast(o.orderDate as LocalDate)",
+                DailyRevenueDTO.class)
+                .setParameter("statuses", OrderStatus.BILLED)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList()
+        );
+    }
+
+    @Override
+    public Uni<Integer> updateStatus(int id, Collection<OrderStatus> from, OrderStatus to) {
+        LOG.debugf("Updating order status: orderId=%d, from=%s, to=%s", id, from, to);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("UPDATE Order o SET o.status = :to WHERE o.id = :id AND o.status IN :from")
+                .setParameter("to", to)
+                .setParameter("id", id)
+                .setParameter("from", from)
+                .executeUpdate()
+                .call(updated -> updated > 0
+                    ? summaryRepository.updateStatus(List.of(id), from, to)
+                    : Uni.createFrom().voidItem())
+        ).invoke(() -> readRouting.orderWritten(id));
+    }
+
+    @Override
+    public Uni<Integer> updateStatus(Collection<Integer> ids, Collection<OrderStatus> from, OrderStatus to) {
+        if (ids.isEmpty() || from.isEmpty()) {
+            return Uni.createFrom().item(0);
+        }
+        LOG.debugf("Updating status of %d orders: from=%s, to=%s", ids.size(), from, to);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("UPDATE Order o SET o.status = :to WHERE o.id IN :ids AND o.status IN :from")
+                .setParameter("to", to)
+                .setParameter("ids", ids)
+                .setParameter("from", from)
+                .executeUpdate()
+                .call(() -> summaryRepository.updateStatus(ids, from, to))
+        ).invoke(() -> ids.forEach(readRouting::orderWritten));
     }
 
     @Override
@@ -75,6 +302,11 @@ public class OrderRepository implements IOrderRepository {
         return sessionFactory.withTransaction(session -> session.find(Order.class, id)
             .onItem().ifNull().failWith(() -> new OrderNotFoundException(id))
             .onItem().ifNotNull().call(session::remove)
+            .call(() -> summaryRepository.delete(id))
+            .invoke(order -> {
+                readRouting.orderWritten(id);
+                readRouting.userWrote(order.getKeycloakId());
+            })
             .replaceWithVoid())
             .invoke(() -> LOG.debugf("Order deleted from DB: orderId=%d", id));
     }
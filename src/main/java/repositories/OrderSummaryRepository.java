@@ -0,0 +1,103 @@
+package repositories;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dto.OrderCursor;
+import dto.OrderHistoryQuery;
+import dto.OrderSummaryDTO;
+import dto.OrderSummaryPage;
+import entities.Order;
+import entities.OrderSummary;
+import enums.OrderStatus;
+import interfaces.IOrderSummaryRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.reactive.mutiny.Mutiny.SelectionQuery;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+
+/**
+ * Query side of the orders: writes join the caller's transaction so a summary never disagrees with its order,
+ * reads are DTO projections that never load or track entities.
+ */
+@ApplicationScoped
+public class OrderSummaryRepository implements IOrderSummaryRepository {
+
+    private static final Logger LOG = Logger.getLogger(OrderSummaryRepository.class);
+
+    SessionFactory sessionFactory;
+    public OrderSummaryRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Uni<Void> create(Order order) {
+        return sessionFactory.withTransaction(session -> session.persist(OrderSummary.of(order)));
+    }
+
+    @Override
+    public Uni<Integer> updateStatus(Collection<Integer> orderIds, Collection<OrderStatus> from, OrderStatus to) {
+        // Same guard as the order update, so both change the same rows
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE OrderSummary s SET s.status = :to WHERE s.orderId IN :ids AND s.status IN :from")
+                .setParameter("to", to)
+                .setParameter("ids", orderIds)
+                .setParameter("from", from)
+                .executeUpdate()
+        );
+    }
+
+    @Override
+    public Uni<Void> delete(int orderId) {
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM OrderSummary s WHERE s.orderId = :id")
+                .setParameter("id", orderId)
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<OrderSummaryPage> readPageByUser(OrderHistoryQuery query) {
+        LOG.debugf("Fetching order summaries for user: keycloakId=%s, after=%s, limit=%d",
+            query.keycloakId(), query.after(), query.limit());
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder hql = new StringBuilder(
+            "SELECT new dto.OrderSummaryDTO(s.orderId, s.status, s.orderDate, s.itemCount, s.total, s.productNames)"
+                + " FROM OrderSummary s WHERE s.keycloakId = :keycloakId");
+        parameters.put("keycloakId", query.keycloakId());
+        if (query.statuses() != null && !query.statuses().isEmpty()) {
+            hql.append(" AND s.status IN :statuses");
+            parameters.put("statuses", query.statuses());
+        }
+        if (query.from() != null) {
+            hql.append(" AND s.orderDate >= :from");
+            parameters.put("from", query.from());
+        }
+        if (query.to() != null) {
+            hql.append(" AND s.orderDate < :to");
+            parameters.put("to", query.to());
+        }
+        if (query.after() != null) {
+            hql.append(" AND (s.orderDate < :afterDate OR (s.orderDate = :afterDate AND s.orderId < :afterId))");
+            parameters.put("afterDate", query.after().orderDate());
+            parameters.put("afterId", query.after().id());
+        }
+        hql.append(" ORDER BY s.orderDate DESC, s.orderId DESC");
+
+        return sessionFactory.withStatelessSession(session -> {
+            SelectionQuery<OrderSummaryDTO> summaryQuery =
+                session.createSelectionQuery(hql.toString(), OrderSummaryDTO.class);
+            parameters.forEach(summaryQuery::setParameter);
+            return summaryQuery.setMaxResults(query.limit() + 1).getResultList();
+        }).map(summaries -> {
+            boolean hasMore = summaries.size() > query.limit();
+            List<OrderSummaryDTO> page = hasMore ? summaries.subList(0, query.limit()) : summaries;
+            OrderSummaryDTO last = hasMore ? page.get(page.size() - 1) : null;
+            return new OrderSummaryPage(page, last != null ? new OrderCursor(last.orderDate, last.id) : null);
+        });
+    }
+}
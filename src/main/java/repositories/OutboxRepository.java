@@ -0,0 +1,63 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import entities.OutboxMessage;
+import interfaces.IOutboxRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.LockMode;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+
+@ApplicationScoped
+public class OutboxRepository implements IOutboxRepository {
+
+    private static final Logger LOG = Logger.getLogger(OutboxRepository.class);
+
+    SessionFactory sessionFactory;
+    public OutboxRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Uni<Void> create(List<OutboxMessage> messages) {
+        LOG.debugf("Writing %d messages to the outbox", messages.size());
+        return sessionFactory.withTransaction(session -> session.persistAll(messages.toArray()));
+    }
+
+    @Override
+    public Uni<List<OutboxMessage>> lockUnpublished(int limit) {
+        // SKIP LOCKED lets several replicas relay disjoint batches at the same time
+        return sessionFactory.withTransaction(session ->
+            session.createSelectionQuery(
+                "FROM OutboxMessage m WHERE m.publishedAt IS NULL ORDER BY m.id", OutboxMessage.class)
+                .setLockMode(LockMode.UPGRADE_SKIPLOCKED)
+                .setMaxResults(limit)
+                .getResultList()
+        );
+    }
+
+    @Override
+    public Uni<Integer> markPublished(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Uni.createFrom().item(0);
+        }
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("UPDATE OutboxMessage m SET m.publishedAt = :now WHERE m.id IN :ids")
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("ids", ids)
+                .executeUpdate()
+        );
+    }
+
+    @Override
+    public Uni<Integer> deletePublishedBefore(LocalDateTime cutoff) {
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery("DELETE FROM OutboxMessage m WHERE m.publishedAt < :cutoff")
+                .setParameter("cutoff", cutoff)
+                .executeUpdate()
+        );
+    }
+}
@@ -0,0 +1,30 @@
+package repositories;
+
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import entities.Order;
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Order reads against the read replica. Hibernate Reactive only runs on the primary datasource, so these are
+ * plain SQL queries mapped to detached entities with the same shape the primary path returns.
+ */
+@ApplicationScoped
+public class ReplicaOrderReader {
+
+    SqlOrderReader reader;
+    public ReplicaOrderReader(@ReactiveDataSource("replica") Pool replica) {
+        this.reader = new SqlOrderReader(replica, "replica", "App_Order", "App_OrderItem");
+    }
+
+    public Uni<Order> read(int id) {
+        return reader.read(id);
+    }
+
+    public Uni<OrderPage> readPageByUser(OrderHistoryQuery query) {
+        return reader.readPageByUser(query);
+    }
+}
@@ -0,0 +1,110 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import entities.SagaState;
+import enums.SagaStep;
+import interfaces.ISagaStateRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+
+@ApplicationScoped
+public class SagaStateRepository implements ISagaStateRepository {
+
+    private static final Logger LOG = Logger.getLogger(SagaStateRepository.class);
+
+    private static final List<SagaStep> TERMINAL_STEPS = List.of(SagaStep.CONFIRMED, SagaStep.COMPENSATED);
+
+    SessionFactory sessionFactory;
+    public SagaStateRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public Uni<SagaState> create(SagaState sagaState) {
+        LOG.debugf("Persisting saga state: orderId=%d, step=%s", sagaState.getOrderId(), sagaState.getStep());
+        return sessionFactory.withTransaction(session -> session.persist(sagaState).replaceWith(sagaState));
+    }
+
+    @Override
+    public Uni<Void> updateStep(int orderId, SagaStep step) {
+        LOG.debugf("Updating saga step: orderId=%d, step=%s", orderId, step);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE SagaState s SET s.step = :step, s.updatedAt = :now WHERE s.orderId = :orderId")
+                .setParameter("step", step)
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("orderId", orderId)
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> updateSteps(Collection<Integer> orderIds, SagaStep step) {
+        LOG.debugf("Updating saga step of %d orders: step=%s", orderIds.size(), step);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE SagaState s SET s.step = :step, s.updatedAt = :now WHERE s.orderId IN :orderIds")
+                .setParameter("step", step)
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("orderIds", orderIds)
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> updateReservation(int orderId, String reservationId, String reservedItems) {
+        LOG.debugf("Updating saga reservation: orderId=%d, reservationId=%s", orderId, reservationId);
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE SagaState s SET s.reservationId = :reservationId, s.reservedItems = :reservedItems, "
+                    + "s.updatedAt = :now WHERE s.orderId = :orderId")
+                .setParameter("reservationId", reservationId)
+                .setParameter("reservedItems", reservedItems)
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("orderId", orderId)
+                .executeUpdate()
+        ).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<List<SagaState>> findStale(LocalDateTime updatedBefore, int maxAttempts, int limit) {
+        return sessionFactory.withSession(session ->
+            session.createQuery(
+                "SELECT s FROM SagaState s WHERE s.step NOT IN :terminal AND s.updatedAt < :updatedBefore "
+                    + "AND s.attempts < :maxAttempts ORDER BY s.updatedAt", SagaState.class)
+                .setParameter("terminal", TERMINAL_STEPS)
+                .setParameter("updatedBefore", updatedBefore)
+                .setParameter("maxAttempts", maxAttempts)
+                .setMaxResults(limit)
+                .getResultList()
+        );
+    }
+
+    @Override
+    public Uni<Long> countIncomplete() {
+        return sessionFactory.withSession(session ->
+            session.createQuery("SELECT COUNT(s) FROM SagaState s WHERE s.step NOT IN :terminal", Long.class)
+                .setParameter("terminal", TERMINAL_STEPS)
+                .getSingleResult()
+        );
+    }
+
+    @Override
+    public Uni<Boolean> claim(int orderId, LocalDateTime seenUpdatedAt) {
+        // Only one replica wins the compare-and-set, the others skip the saga until it goes stale again
+        return sessionFactory.withTransaction(session ->
+            session.createMutationQuery(
+                "UPDATE SagaState s SET s.attempts = s.attempts + 1, s.updatedAt = :now "
+                    + "WHERE s.orderId = :orderId AND s.updatedAt = :seenUpdatedAt")
+                .setParameter("now", LocalDateTime.now())
+                .setParameter("orderId", orderId)
+                .setParameter("seenUpdatedAt", seenUpdatedAt)
+                .executeUpdate()
+        ).onItem().transform(updated -> updated == 1);
+    }
+}
@@ -0,0 +1,163 @@
+package repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dto.DailyRevenueDTO;
+import dto.OrderCursor;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.UserSpendDTO;
+import entities.Order;
+import entities.OrderItem;
+import enums.OrderStatus;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import org.jboss.logging.Logger;
+
+/**
+ * Plain SQL order reads for the places Hibernate Reactive does not reach: the replica datasource and the
+ * archive tables. Rows are mapped to detached entities with the same shape the Hibernate path returns.
+ */
+final class SqlOrderReader {
+
+    private static final Logger LOG = Logger.getLogger(SqlOrderReader.class);
+
+    private final Pool pool;
+    private final String source;
+    private final String orderTable;
+    private final String orderColumns;
+    private final String itemColumns;
+
+    /**
+     * @param source name used in log messages
+     * @param orderTable table with the App_Order columns
+     * @param itemTable table with the App_OrderItem columns
+     */
+    SqlOrderReader(Pool pool, String source, String orderTable, String itemTable) {
+        this.pool = pool;
+        this.source = source;
+        this.orderTable = orderTable;
+        this.orderColumns = "SELECT id, keycloak_id, orderDate, status, total, item_count FROM " + orderTable;
+        this.itemColumns = "SELECT id, order_Id, product_id, name, price, description, quantity FROM " + itemTable;
+    }
+
+    Uni<Order> read(int id) {
+        LOG.debugf("Fetching order from %s: orderId=%d", source, id);
+        return pool.preparedQuery(orderColumns + " WHERE id = $1")
+            .execute(Tuple.of(id))
+            .chain(rows -> withItems(rows))
+            .map(orders -> orders.isEmpty() ? null : orders.get(0));
+    }
+
+    Uni<OrderPage> readPageByUser(OrderHistoryQuery query) {
+        LOG.debugf("Fetching order page from %s: keycloakId=%s, after=%s", source, query.keycloakId(), query.after());
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(orderColumns).append(" WHERE keycloak_id = $1");
+        parameters.add(query.keycloakId());
+        if (query.statuses() != null && !query.statuses().isEmpty()) {
+            parameters.add(query.statuses().stream().map(OrderStatus::name).toArray(String[]::new));
+            sql.append(" AND status = ANY($").append(parameters.size()).append(")");
+        }
+        if (query.from() != null) {
+            parameters.add(query.from());
+            sql.append(" AND orderDate >= $").append(parameters.size());
+        }
+        if (query.to() != null) {
+            parameters.add(query.to());
+            sql.append(" AND orderDate < $").append(parameters.size());
+        }
+        if (query.after() != null) {
+            parameters.add(query.after().orderDate());
+            parameters.add(query.after().id());
+            sql.append(" AND (orderDate, id) < ($").append(parameters.size() - 1)
+                .append(", $").append(parameters.size()).append(")");
+        }
+        parameters.add(query.limit() + 1);
+        sql.append(" ORDER BY orderDate DESC, id DESC LIMIT $").append(parameters.size());
+
+        return pool.preparedQuery(sql.toString())
+            .execute(Tuple.from(parameters))
+            .chain(rows -> withItems(rows))
+            .map(orders -> {
+                boolean hasMore = orders.size() > query.limit();
+                List<Order> page = hasMore ? orders.subList(0, query.limit()) : orders;
+                return new OrderPage(page, hasMore ? OrderCursor.of(page.get(page.size() - 1)) : null);
+            });
+    }
+
+    Uni<UserSpendDTO> readSpendByUser(String keycloakId, Collection<OrderStatus> statuses, LocalDateTime from,
+            LocalDateTime to) {
+        LOG.debugf("Summing spend from %s: keycloakId=%s, from=%s, to=%s", source, keycloakId, from, to);
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT count(*) AS order_count, sum(total) AS total FROM ")
+            .append(orderTable).append(" WHERE keycloak_id = $1 AND status = ANY($2)");
+        parameters.add(keycloakId);
+        parameters.add(statuses.stream().map(OrderStatus::name).toArray(String[]::new));
+        if (from != null) {
+            parameters.add(from);
+            sql.append(" AND orderDate >= $").append(parameters.size());
+        }
+        if (to != null) {
+            parameters.add(to);
+            sql.append(" AND orderDate < $").append(parameters.size());
+        }
+        return pool.preparedQuery(sql.toString())
+            .execute(Tuple.from(parameters))
+            .map(rows -> {
+                Row row = rows.iterator().next();
+                return new UserSpendDTO(row.getLong("order_count"), row.getBigDecimal("total"));
+            });
+    }
+
+    Uni<List<DailyRevenueDTO>> readRevenueByDay(Collection<OrderStatus> statuses, LocalDateTime from, LocalDateTime to) {
+        LOG.debugf("Summing revenue per day from %s: from=%s, to=%s", source, from, to);
+        return pool.preparedQuery("SELECT cast(orderDate AS date) AS day, count(*) AS order_count, sum(total) AS revenue"
+                + " FROM " + orderTable + " WHERE status = ANY($1) AND orderDate >= $2 AND orderDate < $3"
+                + " GROUP BY day ORDER BY day")
+            .execute(Tuple.of(statuses.stream().map(OrderStatus::name).toArray(String[]::new), from, to))
+            .map(rows -> {
+                List<DailyRevenueDTO> days = new ArrayList<>();
+                for (Row row : rows) {
+                    days.add(new DailyRevenueDTO(row.getLocalDate("day"), row.getLong("order_count"),
+                        row.getBigDecimal("revenue")));
+                }
+                return days;
+            });
+    }
+
+    private Uni<List<Order>> withItems(RowSet<Row> orderRows) {
+        List<Order> orders = new ArrayList<>();
+        Map<Integer, Order> byId = new HashMap<>();
+        for (Row row : orderRows) {
+            Order order = new Order(row.getInteger("id"), row.getString("keycloak_id"), new ArrayList<>(),
+                OrderStatus.valueOf(row.getString("status")), row.getLocalDateTime("orderdate"),
+                row.getBigDecimal("total"), row.getInteger("item_count"));
+            orders.add(order);
+            byId.put(order.getId(), order);
+        }
+        if (orders.isEmpty()) {
+            return Uni.createFrom().item(orders);
+        }
+
+        Integer[] ids = byId.keySet().toArray(Integer[]::new);
+        return pool.preparedQuery(itemColumns + " WHERE order_Id = ANY($1) ORDER BY id")
+            .execute(Tuple.of(ids))
+            .map(itemRows -> {
+                for (Row row : itemRows) {
+                    Order order = byId.get(row.getInteger("order_id"));
+                    order.getOrderItems().add(new OrderItem(row.getInteger("id"), order, row.getString("product_id"),
+                        row.getString("name"), row.getBigDecimal("price"), row.getString("description"),
+                        row.getInteger("quantity")));
+                }
+                return orders;
+            });
+    }
+}
@@ -1,22 +1,39 @@
 package saga;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
+import dto.BatchOrderOutcome;
 import dto.CreateOrderRequest;
 import dto.ReserveStockItem;
+import dto.ResolvedOrder;
 import dto.SagaContext;
+import dto.StockReleaseFailed;
 import dto.StockReserved;
-import dto.UpdateOrderStatusRequest;
 import dto.StockReservationFailed;
 import entities.Order;
+import entities.OutboxMessage;
+import entities.SagaState;
 import enums.OrderStatus;
+import enums.SagaStep;
+import exceptions.errors.IllegalStatusTransitionException;
 import exceptions.errors.OrderCreationException;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.jboss.logging.MDC;
 import services.OrderService;
 import services.ProductClientService;
+import utils.StageTimer;
+import utils.VertxContexts;
 
 @ApplicationScoped
 public class OrderSagaOrchestrator {
@@ -25,49 +42,135 @@ public class OrderSagaOrchestrator {
 
     private final OrderService orderService;
     private final ProductClientService productClientService;
+    private final SagaLog sagaLog;
+    private final StageTimer stageTimer;
+    private final SagaAdmission admission;
+    private final Vertx vertx;
+    private final boolean parallelReservation;
 
-    public OrderSagaOrchestrator(OrderService orderService, ProductClientService productClientService) {
+    public OrderSagaOrchestrator(OrderService orderService, ProductClientService productClientService,
+            SagaLog sagaLog, StageTimer stageTimer, SagaAdmission admission, Vertx vertx,
+            @ConfigProperty(name = "amazoff.saga.parallel-reservation", defaultValue = "false") boolean parallelReservation) {
         this.orderService = orderService;
         this.productClientService = productClientService;
+        this.sagaLog = sagaLog;
+        this.stageTimer = stageTimer;
+        this.admission = admission;
+        this.vertx = vertx;
+        this.parallelReservation = parallelReservation;
     }
 
     public Uni<Order> createOrderWithSaga(CreateOrderRequest request, String keycloakId) {
         LOG.info("Starting order saga orchestration");
-        SagaContext context = new SagaContext();
+        return admission.run(() -> runSaga(request, keycloakId, new SagaContext()));
+    }
+
+    /**
+     * Returns as soon as the PENDING order is committed and finishes the saga in the background on its own context,
+     * so the caller's connection is not held through the reservation. The saga outcome is the order status.
+     */
+    public Uni<Order> acceptOrderWithSaga(CreateOrderRequest request, String keycloakId) {
+        LOG.info("Starting order saga orchestration in the background");
+        // The slot is held until the background saga finishes, not just until the order is accepted
+        return admission.acquire().onItem().transformToUni(permit -> {
+            SagaContext context = new SagaContext();
+            VertxContexts.onNewContext(vertx, () -> runSaga(request, keycloakId, context))
+                    .onTermination().invoke((order, failure, cancelled) -> {
+                        if (permit != null) {
+                            permit.release(failure);
+                        }
+                    })
+                    .subscribe().with(
+                            order -> LOG.infof("Background saga finished: orderId=%d", order.getId()),
+                            e -> LOG.warnf("Background saga failed: %s", e.getMessage()));
+            return VertxContexts.fromCompletionStage(() -> context.accepted);
+        });
+    }
+
+    private Uni<Order> runSaga(CreateOrderRequest request, String keycloakId, SagaContext context) {
+        Uni<Order> reserved = parallelReservation
+                ? createPendingOrderAndReserveStock(request, context, keycloakId)
+                : createPendingOrder(request, context, keycloakId)
+                        .onItem().transformToUni(order -> reserveProductStock(order, context));
 
-        return createPendingOrder(request, context, keycloakId)
-                .onItem().transformToUni(order -> reserveProductStock(order, context))
+        return reserved
                 .onItem().transformToUni(order -> confirmOrder(order, context))
                 .onFailure().recoverWithUni(error -> handleSagaFailure(error, context))
                 .eventually(() -> cleanupContext());
     }
 
     private Uni<Order> createPendingOrder(CreateOrderRequest request, SagaContext context, String keycloakId) {
-        return orderService.createPendingOrder(request, keycloakId)
+        // The reservation is either already on its way (parallel mode) or committed to the outbox with the order
+        return orderService.resolvePendingOrder(request, keycloakId)
+                .onItem().transformToUni(order -> {
+                    List<ReserveStockItem> reserveItems = context.reserveItems != null
+                            ? context.reserveItems
+                            : extractReserveItems(order);
+                    return stageTimer.time("persist", () -> sagaLog.orderCreated(order, reserveItems,
+                            context.reservationId, SagaStep.RESERVING, created -> parallelReservation
+                                    ? List.of()
+                                    : List.of(stageReservation(created, reserveItems, context))));
+                })
                 .onItem().invoke(order -> {
                     context.order = order;
                     context.orderCreated = true;
-                    context.reserveItems = extractReserveItems(order);
+                    context.accepted.complete(order);
+                    if (context.reserveItems == null) {
+                        context.reserveItems = extractReserveItems(order);
+                    }
                     MDC.put("orderId", order.getId());
-                    LOG.infof("Order created: orderId=%d", order.getId());
+                    LOG.infof("Order created: orderId=%d, keycloakId=%s, items=%d", order.getId(),
+                            order.getKeycloakId(), order.getOrderItems().size());
                 });
     }
 
+    private OutboxMessage stageReservation(Order order, List<ReserveStockItem> reserveItems, SagaContext context) {
+        ProductClientService.StockCall call = productClientService.prepareReserveStock(order.getId(), reserveItems);
+        context.reservation = call.reply();
+        return call.message();
+    }
+
     private Uni<Order> reserveProductStock(Order order, SagaContext context) {
-        LOG.infof("Reserving stock for orderId=%d", order.getId());
+        LOG.infof("Awaiting stock reservation for orderId=%d", order.getId());
 
-        return productClientService.reserveStock(context.reserveItems)
+        return stageTimer.time("reserve-stock", () -> context.reservation)
                 .onItem().transformToUni(stockResult -> handleStockReservationResult(stockResult, order, context));
     }
 
+    private Uni<Order> createPendingOrderAndReserveStock(CreateOrderRequest request, SagaContext context,
+            String keycloakId) {
+        // The reservation only needs product ids and quantities, so it does not have to wait for the order row.
+        // It cannot be keyed by the order id yet; its own key is recorded with the saga so a release can use it.
+        context.reserveItems = request.orderItems.stream()
+                .map(item -> new ReserveStockItem(item.productId, item.quantity))
+                .toList();
+        context.reservationId = ProductClientService.newReservationId("saga");
+        LOG.infof("Reserving stock concurrently with order creation for reservationId=%s, items=%s",
+                context.reservationId, context.reserveItems);
+
+        Uni<Object> reservation = stageTimer.time("reserve-stock",
+                () -> productClientService.reserveStock(context.reservationId, context.reserveItems))
+                .onItem().invoke(stockResult -> {
+                    context.stockReserved = stockResult instanceof StockReserved;
+                    context.reservationRefused = stockResult instanceof StockReservationFailed;
+                });
+
+        // collectFailures waits for both sides, so compensation sees exactly what succeeded
+        return Uni.combine().all().unis(createPendingOrder(request, context, keycloakId), reservation)
+                .collectFailures().asTuple()
+                .onItem().transformToUni(
+                        result -> handleStockReservationResult(result.getItem2(), result.getItem1(), context));
+    }
+
     private Uni<Order> handleStockReservationResult(Object stockResult, Order order, SagaContext context) {
         if (stockResult instanceof StockReserved) {
             context.stockReserved = true;
             LOG.infof("Stock reserved for orderId=%d", order.getId());
-            return Uni.createFrom().item(order);
+            return sagaLog.stepReached(order.getId(), SagaStep.RESERVED).replaceWith(order);
         }
 
         if (stockResult instanceof StockReservationFailed failed) {
+            context.reservationRefused = true;
             LOG.warnf("Stock reservation failed for orderId=%d: %s", order.getId(), failed.reason);
             return Uni.createFrom().failure(new OrderCreationException("Stock reservation failed: " + failed.reason));
         }
@@ -77,11 +180,12 @@ public class OrderSagaOrchestrator {
     }
 
     private Uni<Order> confirmOrder(Order order, SagaContext context) {
-        return orderService.updateOrderStatus(
-                new UpdateOrderStatusRequest(order.getId(), OrderStatus.CONFIRMED))
-                .onItem().invoke(updatedOrder -> {
+        return stageTimer.time("confirm", () -> sagaLog.orderConfirmed(order.getId()))
+                .onItem().transform(v -> {
+                    order.setStatus(OrderStatus.CONFIRMED);
                     context.orderConfirmed = true;
                     LOG.infof("Order confirmed: orderId=%d", order.getId());
+                    return order;
                 })
                 .onFailure().recoverWithUni(updateError -> {
                     LOG.errorf("Failed to confirm order %d: %s", order.getId(), updateError.getMessage());
@@ -92,42 +196,287 @@ public class OrderSagaOrchestrator {
 
     private Uni<Order> handleSagaFailure(Throwable error, SagaContext context) {
         LOG.errorf("Saga failed, compensating: %s", error.getMessage());
-        return compensate(context)
+        context.accepted.completeExceptionally(error);
+        return stageTimer.time("compensate", () -> compensate(context))
                 .onItem().transformToUni(v -> Uni.createFrom().failure(error));
     }
 
     private Uni<Void> compensate(SagaContext context) {
         LOG.info("Starting compensation actions");
 
-        return releaseReservedStock(context)
-                .onItem().transformToUni(v -> markOrderAsFailed(context))
-                .onItem().invoke(() -> LOG.info("Compensation completed"));
+        Uni<Void> compensation = context.orderCreated
+                ? markOrderAsFailed(context)
+                : releaseReservedStock(context);
+        return compensation.onItem().invoke(() -> LOG.info("Compensation completed"));
     }
 
     private Uni<Void> releaseReservedStock(SagaContext context) {
-        if (!context.stockReserved || context.reserveItems == null) {
+        if (context.reservationId == null || context.reservationRefused || context.reserveItems == null) {
             return Uni.createFrom().voidItem();
         }
 
-        LOG.infof("Compensating: releasing stock for order %d", context.order.getId());
-        return productClientService.releaseStock(context.reserveItems)
+        // Only reachable in parallel mode when the order row was never written, so there is no transaction to join.
+        // A reservation that timed out may still have been applied, so it is released unless Products refused it.
+        LOG.infof("Compensating: releasing stock for reservationId=%s, items=%s", context.reservationId,
+                context.reserveItems);
+        return productClientService.releaseStock(context.reservationId, context.reserveItems)
                 .onFailure().invoke(e -> LOG.errorf("Failed to release stock during compensation: %s", e.getMessage()))
                 .onFailure().recoverWithItem(v -> null)
                 .replaceWith(Uni.createFrom().voidItem());
     }
 
     private Uni<Void> markOrderAsFailed(SagaContext context) {
-        if (!context.orderCreated || context.orderConfirmed) {
+        if (context.orderConfirmed) {
             return Uni.createFrom().voidItem();
         }
 
-        LOG.infof("Compensating: marking order %d as failed", context.order.getId());
-        return orderService.updateOrderStatus(
-                new UpdateOrderStatusRequest(context.order.getId(), OrderStatus.FAILED))
+        int orderId = context.order.getId();
+        // A reservation that was sent (through the outbox, or directly in parallel mode) may be applied even if its
+        // reply timed out or could not be read, so unless Products refused it the order may hold stock; a release
+        // without a reservation is a no-op
+        boolean reservationSent = context.reservation != null || context.reservationId != null;
+        boolean mayHoldStock = context.stockReserved || (reservationSent && !context.reservationRefused);
+        String reservationId = context.reservationId != null
+                ? context.reservationId
+                : ProductClientService.reservationId(orderId);
+        ProductClientService.StockCall release = mayHoldStock
+                ? productClientService.prepareReleaseStock(orderId, reservationId, context.reserveItems)
+                : null;
+        LOG.infof("Compensating: marking order %d as failed", orderId);
+        return sagaLog.orderFailed(orderId, release != null ? List.of(release.message()) : List.of())
                 .onFailure()
                 .invoke(e -> LOG.errorf("Failed to mark order as failed during compensation: %s", e.getMessage()))
                 .onFailure().recoverWithItem(v -> null)
-                .replaceWith(Uni.createFrom().voidItem());
+                .onItem().transformToUni(v -> release != null ? awaitRelease(orderId, release) : Uni.createFrom().voidItem());
+    }
+
+    private Uni<Void> awaitRelease(int orderId, ProductClientService.StockCall release) {
+        return release.reply()
+                .onItem().invoke(result -> {
+                    if (result instanceof StockReleaseFailed failed) {
+                        LOG.errorf("Stock release failed for orderId=%d: %s", orderId, failed.reason);
+                    }
+                })
+                .onFailure().invoke(e -> LOG.errorf("Failed to release stock during compensation: %s", e.getMessage()))
+                .onFailure().recoverWithItem(v -> null)
+                .replaceWithVoid();
+    }
+
+    /**
+     * Creates a batch of orders for one buyer: one buyer and one product lookup, one transaction for all orders and
+     * one reservation for the summed items under a batch key of its own. If the combined reservation is refused, the
+     * orders are reserved one by one through the outbox in request order under their own ids, so the earlier orders
+     * get the remaining stock. Every order that does not make it is compensated on its own. The whole batch takes
+     * one admission slot.
+     */
+    public Uni<List<BatchOrderOutcome>> createOrdersWithSaga(List<CreateOrderRequest> requests, String keycloakId) {
+        LOG.infof("Starting batch saga for %d orders", requests.size());
+        return admission.run(() -> runBatchSaga(requests, keycloakId));
+    }
+
+    private Uni<List<BatchOrderOutcome>> runBatchSaga(List<CreateOrderRequest> requests, String keycloakId) {
+        return orderService.resolvePendingOrders(requests, keycloakId)
+                .onItem().transformToUni(resolved -> {
+                    List<Order> pending = resolved.stream().map(ResolvedOrder::order).filter(Objects::nonNull).toList();
+                    if (pending.isEmpty()) {
+                        return Uni.createFrom().item(batchOutcomes(resolved, Map.of()));
+                    }
+                    Order leading = pending.get(0);
+                    List<ReserveStockItem> merged = mergeReserveItems(pending);
+                    String batchReservationId = ProductClientService.newReservationId("batch");
+                    AtomicReference<ProductClientService.StockCall> reservation = new AtomicReference<>();
+                    // The leading order's saga state records the combined items and the batch key, so recovery
+                    // releases the combined reservation under the key it was made with
+                    return stageTimer.time("persist", () -> sagaLog.ordersCreated(pending,
+                                    order -> order == leading ? merged : extractReserveItems(order),
+                                    order -> order == leading ? batchReservationId : null,
+                                    created -> {
+                                        reservation.set(productClientService.prepareBatchReserveStock(
+                                                batchReservationId, created.stream().map(Order::getId).toList(),
+                                                merged));
+                                        return List.of(reservation.get().message());
+                                    }))
+                            .onItem().transformToUni(created -> settleBatch(created, batchReservationId,
+                                    reservation.get().reply()))
+                            .onFailure().recoverWithItem(e -> {
+                                // Nothing was committed, so there is nothing to compensate
+                                LOG.errorf("Failed to persist order batch: %s", e.getMessage());
+                                Map<Integer, String> failures = new HashMap<>();
+                                pending.forEach(order -> failures.put(order.getId(), "Order creation failed: " + e.getMessage()));
+                                return failures;
+                            })
+                            .map(failures -> batchOutcomes(resolved, failures));
+                })
+                .onFailure().recoverWithItem(e -> IntStream.range(0, requests.size())
+                        .mapToObj(index -> new BatchOrderOutcome(index, OrderStatus.FAILED, null, e.getMessage()))
+                        .toList());
+    }
+
+    /**
+     * @return the reason per order id for every order that ended up FAILED
+     */
+    private Uni<Map<Integer, String>> settleBatch(List<Order> created, String reservationId,
+            Uni<Object> reservation) {
+        List<Integer> orderIds = created.stream().map(Order::getId).toList();
+        return stageTimer.time("reserve-stock", () -> reservation)
+                .onItem().transformToUni(result -> {
+                    if (result instanceof StockReserved) {
+                        LOG.infof("Stock reserved for batch of %d orders", created.size());
+                        return stageTimer.time("confirm", () -> sagaLog.ordersConfirmed(orderIds))
+                                .replaceWith(Map.<Integer, String>of())
+                                .onFailure().recoverWithUni(e -> failBatch(created, reservationId,
+                                        "Order confirmation failed: " + e.getMessage()));
+                    }
+                    if (result instanceof StockReservationFailed failed) {
+                        LOG.warnf("Batch reservation failed (%s), reserving orders one by one", failed.reason);
+                        return reserveOneByOne(created);
+                    }
+                    return failBatch(created, reservationId, "Unknown stock reservation response");
+                })
+                .onFailure().recoverWithUni(e -> failBatch(created, reservationId,
+                        "Stock reservation failed: " + e.getMessage()));
+    }
+
+    private Uni<Map<Integer, String>> reserveOneByOne(List<Order> orders) {
+        Map<Integer, String> failures = new HashMap<>();
+        return Multi.createFrom().iterable(orders)
+                .onItem().transformToUniAndConcatenate(order -> reserveSingle(order)
+                        .invoke(reason -> {
+                            if (reason != null) {
+                                failures.put(order.getId(), reason);
+                            }
+                        }))
+                .collect().last()
+                .replaceWith(failures);
+    }
+
+    /**
+     * Stages the order's own reservation in the outbox in its own transaction, so Products records it under the
+     * order's id and a release or a recovery after a crash can be paired with it. The saga state is switched to that
+     * reservation, which matters for the leading order that recorded the refused batch reservation.
+     *
+     * @return null when the order was confirmed, otherwise why it failed
+     */
+    private Uni<String> reserveSingle(Order order) {
+        return Uni.createFrom().deferred(() -> {
+                    List<ReserveStockItem> items = extractReserveItems(order);
+                    ProductClientService.StockCall call = productClientService.prepareReserveStock(order.getId(), items);
+                    return sagaLog.reservationStaged(order.getId(), null, items, call.message()).replaceWith(call);
+                })
+                .onItemOrFailure().transformToUni((call, e) -> e != null
+                        // Not committed, so the reservation was never sent
+                        ? fail(order, false, "Stock reservation failed: " + e.getMessage())
+                        : settleSingle(order, call.reply()));
+    }
+
+    private Uni<String> settleSingle(Order order, Uni<Object> reservation) {
+        int orderId = order.getId();
+        return reservation
+                .onItem().transformToUni(result -> {
+                    if (result instanceof StockReserved) {
+                        return sagaLog.stepReached(orderId, SagaStep.RESERVED)
+                                .chain(() -> sagaLog.orderConfirmed(orderId))
+                                .invoke(() -> LOG.infof("Order confirmed: orderId=%d", orderId))
+                                .map(confirmed -> (String) null)
+                                .onFailure().recoverWithUni(e -> fail(order, true,
+                                        "Order confirmation failed: " + e.getMessage()));
+                    }
+                    if (result instanceof StockReservationFailed failed) {
+                        return fail(order, false, "Stock reservation failed: " + failed.reason);
+                    }
+                    return fail(order, true, "Unknown stock reservation response");
+                })
+                .onFailure().recoverWithUni(e -> fail(order, true, "Stock reservation failed: " + e.getMessage()));
+    }
+
+    /**
+     * Fails every order of a batch whose combined reservation may have been applied. It is released as a whole,
+     * with the leading order, under the batch key it was made with.
+     */
+    private Uni<Map<Integer, String>> failBatch(List<Order> orders, String reservationId, String reason) {
+        Order leading = orders.get(0);
+        OutboxMessage release = productClientService.releaseStockMessage(leading.getId(), reservationId,
+                mergeReserveItems(orders));
+        return Multi.createFrom().iterable(orders)
+                .onItem().transformToUniAndConcatenate(order -> fail(order,
+                        order == leading ? List.of(release) : List.of(), reason))
+                .collect().last()
+                .map(ignored -> {
+                    Map<Integer, String> failures = new HashMap<>();
+                    orders.forEach(order -> failures.put(order.getId(), reason));
+                    return failures;
+                });
+    }
+
+    /**
+     * @param release whether the order may hold its own reservation, in which case its items are released via the outbox
+     */
+    private Uni<String> fail(Order order, boolean release, String reason) {
+        return fail(order, release
+                ? List.of(productClientService.releaseStockMessage(order.getId(), extractReserveItems(order)))
+                : List.of(), reason);
+    }
+
+    private Uni<String> fail(Order order, List<OutboxMessage> compensations, String reason) {
+        int orderId = order.getId();
+        LOG.warnf("Compensating: marking order %d as failed: %s", orderId, reason);
+        return sagaLog.orderFailed(orderId, compensations)
+                .onFailure()
+                .invoke(e -> LOG.errorf("Failed to mark order %d as failed, recovery will retry: %s", orderId,
+                        e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWith(reason);
+    }
+
+    private static List<BatchOrderOutcome> batchOutcomes(List<ResolvedOrder> resolved, Map<Integer, String> failures) {
+        return IntStream.range(0, resolved.size())
+                .mapToObj(index -> {
+                    ResolvedOrder result = resolved.get(index);
+                    if (result.order() == null) {
+                        return new BatchOrderOutcome(index, OrderStatus.FAILED, null, result.error());
+                    }
+                    int orderId = result.order().getId();
+                    String failure = failures.get(orderId);
+                    return failure == null
+                            ? new BatchOrderOutcome(index, OrderStatus.CONFIRMED, orderId, null)
+                            : new BatchOrderOutcome(index, OrderStatus.FAILED, orderId, failure);
+                })
+                .toList();
+    }
+
+    private List<ReserveStockItem> mergeReserveItems(List<Order> orders) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        orders.forEach(order -> order.getOrderItems()
+                .forEach(item -> quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum)));
+        return quantities.entrySet().stream()
+                .map(entry -> new ReserveStockItem(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * Finishes a saga left behind by a crashed or restarted pod. Reserved sagas are confirmed; anything that may
+     * hold a reservation is failed with a release in the outbox; sagas that never reached the reservation are just failed.
+     */
+    public Uni<SagaStep> recover(SagaState sagaState) {
+        int orderId = sagaState.getOrderId();
+        LOG.infof("Recovering saga: orderId=%d, step=%s, attempt=%d", orderId, sagaState.getStep(),
+                sagaState.getAttempts() + 1);
+
+        return switch (sagaState.getStep()) {
+            // Cancelled by the buyer while the saga was running: give the reservation back instead
+            case RESERVED -> sagaLog.orderConfirmed(orderId).replaceWith(SagaStep.CONFIRMED)
+                    .onFailure(IllegalStatusTransitionException.class).recoverWithUni(() -> sagaLog.orderFailed(orderId,
+                                    List.of(releaseRecorded(sagaState)))
+                            .replaceWith(SagaStep.COMPENSATED));
+            case RESERVING -> sagaLog.orderFailed(orderId, List.of(releaseRecorded(sagaState)))
+                    .replaceWith(SagaStep.COMPENSATED);
+            default -> sagaLog.orderFailed(orderId).replaceWith(SagaStep.COMPENSATED);
+        };
+    }
+
+    private OutboxMessage releaseRecorded(SagaState sagaState) {
+        return productClientService.releaseStockMessage(sagaState.getOrderId(), SagaLog.reservationId(sagaState),
+                SagaLog.reservedItems(sagaState));
     }
 
     private List<ReserveStockItem> extractReserveItems(Order order) {
@@ -0,0 +1,180 @@
+package saga;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import entities.OutboxMessage;
+import interfaces.IOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+import services.ProductClientService;
+import utils.VertxContexts;
+
+/**
+ * Publishes committed outbox messages. Each batch is locked, published with publisher confirms and marked
+ * in one transaction, so a crash before the commit only leads to a redelivery, never to a lost message.
+ * Messages of the same order are published one after another in id order; different orders go out concurrently.
+ */
+@ApplicationScoped
+public class OutboxRelay {
+
+    private static final Logger LOG = Logger.getLogger(OutboxRelay.class);
+
+    private final SessionFactory sessionFactory;
+    private final IOutboxRepository outboxRepository;
+    private final ProductClientService productClientService;
+    private final Vertx vertx;
+    private final int batchSize;
+    private final Duration retention;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean wokenUp = new AtomicBoolean();
+    private final Counter published;
+    private final Counter failed;
+    private final DistributionSummary batchSizes;
+    private final Timer lag;
+
+    public OutboxRelay(SessionFactory sessionFactory, IOutboxRepository outboxRepository,
+            ProductClientService productClientService, Vertx vertx, MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.outbox.batch-size", defaultValue = "200") int batchSize,
+            @ConfigProperty(name = "amazoff.outbox.retention", defaultValue = "1h") Duration retention) {
+        this.sessionFactory = sessionFactory;
+        this.outboxRepository = outboxRepository;
+        this.productClientService = productClientService;
+        this.vertx = vertx;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.published = Counter.builder("amazoff.outbox.published")
+                .description("Outbox messages confirmed by the broker")
+                .register(registry);
+        this.failed = Counter.builder("amazoff.outbox.publish.failures")
+                .description("Outbox messages the broker did not confirm; retried on the next run")
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("amazoff.outbox.batch.size")
+                .description("Messages drained per relay batch")
+                .register(registry);
+        this.lag = Timer.builder("amazoff.outbox.lag")
+                .description("Time from outbox commit to broker confirm")
+                .register(registry);
+    }
+
+    /**
+     * Called after a transaction that wrote to the outbox commits, so messages do not wait for the next poll.
+     */
+    public void wakeUp() {
+        VertxContexts.onNewContext(vertx, this::relay)
+                .subscribe().with(
+                        ignored -> { },
+                        e -> LOG.errorf("Outbox relay run failed: %s", e.getMessage()));
+    }
+
+    @Scheduled(every = "${amazoff.outbox.poll-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> poll() {
+        return relay();
+    }
+
+    @Scheduled(every = "${amazoff.outbox.cleanup-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> deletePublished() {
+        return outboxRepository.deletePublishedBefore(LocalDateTime.now().minus(retention))
+                .invoke(deleted -> LOG.debugf("Deleted %d published outbox messages", deleted))
+                .replaceWithVoid();
+    }
+
+    private Uni<Void> relay() {
+        if (!running.compareAndSet(false, true)) {
+            // The run in progress picks the new messages up
+            wokenUp.set(true);
+            return Uni.createFrom().voidItem();
+        }
+        wokenUp.set(false);
+        return Uni.createFrom().deferred(this::relayBatch)
+                .repeat().whilst(drained -> drained == batchSize || wokenUp.getAndSet(false))
+                .collect().last()
+                .onFailure().invoke(e -> LOG.errorf("Outbox relay failed: %s", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .eventually(() -> running.set(false))
+                .replaceWithVoid();
+    }
+
+    private Uni<Integer> relayBatch() {
+        return sessionFactory.withTransaction(session -> outboxRepository.lockUnpublished(batchSize)
+                .onItem().transformToUni(messages -> {
+                    if (messages.isEmpty()) {
+                        return Uni.createFrom().item(0);
+                    }
+                    batchSizes.record(messages.size());
+                    return publishInOrder(messages)
+                            .onItem().transformToUni(outboxRepository::markPublished)
+                            .replaceWith(messages.size());
+                }));
+    }
+
+    private Uni<List<Long>> publishInOrder(List<OutboxMessage> messages) {
+        // Broker confirms arrive on another thread; the session may only be used from its own context
+        Context context = Vertx.currentContext();
+        Map<Integer, List<OutboxMessage>> byOrder = messages.stream()
+                .collect(Collectors.groupingBy(OutboxMessage::getAggregateId, LinkedHashMap::new, Collectors.toList()));
+        List<Uni<List<Long>>> perOrder = new ArrayList<>();
+        // Reservations of different orders committed since the last run go out as one request; an order with more
+        // than one message in the batch keeps its own sequence
+        List<OutboxMessage> mergeable = byOrder.values().stream()
+                .filter(group -> group.size() == 1 && productClientService.isMergeableReservation(group.get(0)))
+                .map(group -> group.get(0))
+                .toList();
+        if (mergeable.size() > 1) {
+            mergeable.forEach(message -> byOrder.remove(message.getAggregateId()));
+            perOrder.add(publishMerged(mergeable));
+        }
+        byOrder.values().forEach(group -> perOrder.add(publishSequentially(group)));
+        return Uni.join().all(perOrder).andFailFast()
+                .onItem().transform(ids -> ids.stream().flatMap(List::stream).toList())
+                .emitOn(command -> context.runOnContext(ignored -> command.run()));
+    }
+
+    private Uni<List<Long>> publishMerged(List<OutboxMessage> messages) {
+        return productClientService.publishMergedReservations(messages)
+                .onItem().invoke(() -> messages.forEach(message -> {
+                    published.increment();
+                    lag.record(Duration.between(message.getCreatedAt(), LocalDateTime.now()));
+                }))
+                .map(ignored -> messages.stream().map(OutboxMessage::getId).toList())
+                .onFailure().invoke(e -> {
+                    failed.increment(messages.size());
+                    LOG.warnf("Merged reservation not confirmed, will retry: %s", e.getMessage());
+                })
+                .onFailure().recoverWithItem(List.of());
+    }
+
+    private Uni<List<Long>> publishSequentially(List<OutboxMessage> messages) {
+        // Stops at the first unconfirmed message so later messages of the same order cannot overtake it
+        return Multi.createFrom().iterable(messages)
+                .onItem().transformToUniAndConcatenate(message -> productClientService.publish(message)
+                        .onItem().invoke(() -> {
+                            published.increment();
+                            lag.record(Duration.between(message.getCreatedAt(), LocalDateTime.now()));
+                        })
+                        .replaceWith(message.getId()))
+                .onFailure().invoke(e -> {
+                    failed.increment();
+                    LOG.warnf("Outbox publish not confirmed, will retry: %s", e.getMessage());
+                })
+                .onFailure().recoverWithCompletion()
+                .collect().asList();
+    }
+}
@@ -0,0 +1,67 @@
+package saga;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import exceptions.errors.DownstreamTimeoutException;
+import exceptions.errors.ServiceOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import utils.AdaptiveLimiter;
+
+/**
+ * Caps the number of sagas running at once. The limit follows the saga latency, so a spike queues briefly and is then
+ * rejected with Retry-After instead of piling up futures in the RabbitMQ clients until everything times out.
+ */
+@ApplicationScoped
+public class SagaAdmission {
+
+    private static final Logger LOG = Logger.getLogger(SagaAdmission.class);
+
+    private final boolean enabled;
+    private final AdaptiveLimiter limiter;
+
+    public SagaAdmission(Vertx vertx, MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.admission.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "amazoff.admission.initial-limit", defaultValue = "50") int initialLimit,
+            @ConfigProperty(name = "amazoff.admission.min-limit", defaultValue = "5") int minLimit,
+            @ConfigProperty(name = "amazoff.admission.max-limit", defaultValue = "500") int maxLimit,
+            @ConfigProperty(name = "amazoff.admission.queue-size", defaultValue = "200") int queueSize,
+            @ConfigProperty(name = "amazoff.admission.queue-timeout", defaultValue = "2s") Duration queueTimeout,
+            @ConfigProperty(name = "amazoff.admission.latency-target", defaultValue = "2s") Duration latencyTarget,
+            @ConfigProperty(name = "amazoff.admission.backoff-ratio", defaultValue = "0.9") double backoffRatio,
+            @ConfigProperty(name = "amazoff.admission.reject-status", defaultValue = "503") int rejectStatus,
+            @ConfigProperty(name = "amazoff.admission.retry-after", defaultValue = "1s") Duration retryAfter) {
+        this.enabled = enabled;
+        Response.Status status = Response.Status.fromStatusCode(rejectStatus);
+        this.limiter = new AdaptiveLimiter("saga", vertx, initialLimit, minLimit, maxLimit, queueSize, queueTimeout,
+                latencyTarget, backoffRatio, SagaAdmission::isTimeout,
+                reason -> {
+                    LOG.warnf("Order saga rejected: %s", reason);
+                    return new ServiceOverloadedException("Too many orders in progress, retry later",
+                            status != null ? status : Response.Status.SERVICE_UNAVAILABLE, retryAfter);
+                },
+                registry);
+    }
+
+    public <T> Uni<T> run(Supplier<Uni<T>> saga) {
+        return enabled ? limiter.run(saga) : saga.get();
+    }
+
+    /**
+     * @return null when admission control is disabled
+     */
+    public Uni<AdaptiveLimiter.Permit> acquire() {
+        return enabled ? limiter.acquire() : Uni.createFrom().nullItem();
+    }
+
+    private static boolean isTimeout(Throwable failure) {
+        return failure instanceof DownstreamTimeoutException || failure instanceof TimeoutException;
+    }
+}
@@ -0,0 +1,182 @@
+package saga;
+
+import java.util.List;
+import java.util.function.Function;
+
+import dto.ReserveStockItem;
+import dto.UpdateOrderStatusRequest;
+import entities.Order;
+import entities.OutboxMessage;
+import entities.SagaState;
+import enums.OrderStatus;
+import enums.SagaStep;
+import exceptions.errors.IllegalStatusTransitionException;
+import interfaces.IOrderRepository;
+import interfaces.IOutboxRepository;
+import interfaces.ISagaStateRepository;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.reactive.mutiny.Mutiny.SessionFactory;
+import org.jboss.logging.Logger;
+import services.OrderService;
+import services.OrderStatusStream;
+import services.ProductClientService;
+
+/**
+ * Persists saga progress in the same transaction as the order change it belongs to,
+ * so a restarted pod can tell how far each saga got. Outgoing saga messages are written
+ * to the outbox in that same transaction and published by {@link OutboxRelay} after commit.
+ */
+@ApplicationScoped
+public class SagaLog {
+
+    private static final Logger LOG = Logger.getLogger(SagaLog.class);
+
+    private final SessionFactory sessionFactory;
+    private final IOrderRepository orderRepository;
+    private final ISagaStateRepository sagaStateRepository;
+    private final OrderService orderService;
+    private final IOutboxRepository outboxRepository;
+    private final OutboxRelay outboxRelay;
+    private final OrderStatusStream orderStatusStream;
+
+    public SagaLog(SessionFactory sessionFactory, IOrderRepository orderRepository,
+            ISagaStateRepository sagaStateRepository, OrderService orderService,
+            IOutboxRepository outboxRepository, OutboxRelay outboxRelay, OrderStatusStream orderStatusStream) {
+        this.sessionFactory = sessionFactory;
+        this.orderRepository = orderRepository;
+        this.sagaStateRepository = sagaStateRepository;
+        this.orderService = orderService;
+        this.outboxRepository = outboxRepository;
+        this.outboxRelay = outboxRelay;
+        this.orderStatusStream = orderStatusStream;
+    }
+
+    public Uni<Order> orderCreated(Order order, List<ReserveStockItem> reserveItems, SagaStep step) {
+        return orderCreated(order, reserveItems, null, step, created -> List.of());
+    }
+
+    /**
+     * @param reservationId the key the stock is reserved under, or null for the order's own id
+     * @param outgoing builds the messages to publish once the order has its id
+     */
+    public Uni<Order> orderCreated(Order order, List<ReserveStockItem> reserveItems, String reservationId,
+            SagaStep step, Function<Order, List<OutboxMessage>> outgoing) {
+        return sessionFactory.withTransaction(session -> orderRepository.create(order)
+                .call(created -> sagaStateRepository.create(
+                        new SagaState(created.getId(), step, Json.encode(reserveItems), reservationId)))
+                .call(created -> enqueue(outgoing.apply(created))))
+                .invoke(outboxRelay::wakeUp);
+    }
+
+    /**
+     * Creates all orders of a batch with their saga state in one transaction, together with the outgoing messages.
+     *
+     * @param reservationIds the key each order's stock is reserved under, or null for the order's own id
+     */
+    public Uni<List<Order>> ordersCreated(List<Order> orders, Function<Order, List<ReserveStockItem>> reserveItems,
+            Function<Order, String> reservationIds, Function<List<Order>, List<OutboxMessage>> outgoing) {
+        return sessionFactory.withTransaction(session -> Multi.createFrom().iterable(orders)
+                .onItem().transformToUniAndConcatenate(order -> orderRepository.create(order)
+                        .call(created -> sagaStateRepository.create(new SagaState(created.getId(), SagaStep.RESERVING,
+                                Json.encode(reserveItems.apply(created)), reservationIds.apply(created)))))
+                .collect().asList()
+                .call(created -> enqueue(outgoing.apply(created))))
+                .invoke(outboxRelay::wakeUp);
+    }
+
+    /**
+     * Commits a new reservation for a saga already in the log, e.g. an order of a refused batch reserved on its own,
+     * and records it as the reservation recovery releases.
+     *
+     * @param reservationId the key the stock is reserved under, or null for the order's own id
+     */
+    public Uni<Void> reservationStaged(int orderId, String reservationId, List<ReserveStockItem> reserveItems,
+            OutboxMessage reservation) {
+        return sessionFactory.withTransaction(session -> sagaStateRepository
+                .updateReservation(orderId, reservationId, Json.encode(reserveItems))
+                .call(() -> enqueue(List.of(reservation))))
+                .invoke(outboxRelay::wakeUp);
+    }
+
+    public Uni<Void> stepReached(int orderId, SagaStep step) {
+        LOG.debugf("Saga step reached: orderId=%d, step=%s", orderId, step);
+        return sagaStateRepository.updateStep(orderId, step);
+    }
+
+    public Uni<Void> orderConfirmed(int orderId) {
+        return sessionFactory.withTransaction(session -> orderService
+                .updateOrderStatus(new UpdateOrderStatusRequest(orderId, OrderStatus.CONFIRMED))
+                .call(() -> sagaStateRepository.updateStep(orderId, SagaStep.CONFIRMED)))
+                .invoke(() -> orderStatusStream.statusChanged(orderId));
+    }
+
+    public Uni<Void> ordersConfirmed(List<Integer> orderIds) {
+        return sessionFactory.withTransaction(session -> orderService
+                .updateOrderStatuses(orderIds, OrderStatus.CONFIRMED)
+                .call(() -> sagaStateRepository.updateSteps(orderIds, SagaStep.CONFIRMED)))
+                .invoke(() -> orderIds.forEach(orderStatusStream::statusChanged))
+                .replaceWithVoid();
+    }
+
+    public Uni<Void> orderFailed(int orderId) {
+        return orderFailed(orderId, List.of());
+    }
+
+    /**
+     * Fails the order and commits the compensating messages with it; once this returns the saga is
+     * COMPENSATED because the relay guarantees the messages are eventually published.
+     */
+    public Uni<Void> orderFailed(int orderId, List<OutboxMessage> compensations) {
+        return sessionFactory.withTransaction(session -> failOrder(orderId)
+                .call(() -> sagaStateRepository.updateStep(orderId, SagaStep.COMPENSATED))
+                .call(() -> enqueue(compensations)))
+                .invoke(outboxRelay::wakeUp)
+                .invoke(() -> orderStatusStream.statusChanged(orderId))
+                .replaceWithVoid();
+    }
+
+    /**
+     * The buyer may cancel a PENDING order while its saga is still running. The order then keeps its status,
+     * but the saga still compensates, otherwise a reservation made in the meantime would never be released.
+     */
+    private Uni<Void> failOrder(int orderId) {
+        return orderRepository.updateStatus(orderId, OrderStatus.sourcesOf(OrderStatus.FAILED), OrderStatus.FAILED)
+                .chain(updated -> updated > 0
+                        ? Uni.createFrom().voidItem()
+                        : orderRepository.readStatus(orderId).chain(current -> {
+                            if (current == null || current == OrderStatus.CANCELLED || current == OrderStatus.FAILED) {
+                                LOG.infof("Compensating saga of orderId=%d that is already %s", orderId, current);
+                                return Uni.createFrom().voidItem();
+                            }
+                            return Uni.createFrom().failure(
+                                    new IllegalStatusTransitionException(orderId, current, OrderStatus.FAILED));
+                        }));
+    }
+
+    private Uni<Void> enqueue(List<OutboxMessage> messages) {
+        return messages.isEmpty() ? Uni.createFrom().voidItem() : outboxRepository.create(messages);
+    }
+
+    /**
+     * @return the key a release of the saga's reservation must use
+     */
+    public static String reservationId(SagaState sagaState) {
+        return sagaState.getReservationId() != null
+                ? sagaState.getReservationId()
+                : ProductClientService.reservationId(sagaState.getOrderId());
+    }
+
+    public static List<ReserveStockItem> reservedItems(SagaState sagaState) {
+        if (sagaState.getReservedItems() == null) {
+            return List.of();
+        }
+        return new JsonArray(sagaState.getReservedItems()).stream()
+                .map(item -> ((JsonObject) item).mapTo(ReserveStockItem.class))
+                .toList();
+    }
+}
@@ -0,0 +1,100 @@
+package saga;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.SagaState;
+import enums.SagaStep;
+import interfaces.ISagaStateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import utils.VertxContexts;
+
+/**
+ * Periodically picks up sagas that stopped making progress (the pod died mid-saga) and
+ * hands them to {@link OrderSagaOrchestrator#recover(SagaState)} in bounded parallel batches.
+ */
+@ApplicationScoped
+public class SagaRecoveryWorker {
+
+    private static final Logger LOG = Logger.getLogger(SagaRecoveryWorker.class);
+
+    private final ISagaStateRepository sagaStateRepository;
+    private final OrderSagaOrchestrator orderSagaOrchestrator;
+    private final Vertx vertx;
+    private final MeterRegistry registry;
+    private final Duration staleAfter;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final AtomicLong backlog = new AtomicLong();
+
+    public SagaRecoveryWorker(ISagaStateRepository sagaStateRepository, OrderSagaOrchestrator orderSagaOrchestrator,
+            Vertx vertx, MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.saga.recovery.stale-after", defaultValue = "2m") Duration staleAfter,
+            @ConfigProperty(name = "amazoff.saga.recovery.batch-size", defaultValue = "100") int batchSize,
+            @ConfigProperty(name = "amazoff.saga.recovery.parallelism", defaultValue = "8") int parallelism,
+            @ConfigProperty(name = "amazoff.saga.recovery.max-attempts", defaultValue = "5") int maxAttempts) {
+        this.sagaStateRepository = sagaStateRepository;
+        this.orderSagaOrchestrator = orderSagaOrchestrator;
+        this.vertx = vertx;
+        this.registry = registry;
+        this.staleAfter = staleAfter;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        Gauge.builder("amazoff.saga.recovery.backlog", backlog, AtomicLong::get)
+                .description("Sagas that have not reached CONFIRMED or COMPENSATED")
+                .register(registry);
+    }
+
+    @Scheduled(every = "${amazoff.saga.recovery.interval}", delayed = "${amazoff.saga.recovery.initial-delay}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> recoverStaleSagas() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(staleAfter);
+        return sagaStateRepository.countIncomplete()
+                .invoke(backlog::set)
+                .chain(() -> sagaStateRepository.findStale(cutoff, maxAttempts, batchSize))
+                .onItem().transformToUni(this::recoverBatch)
+                .onFailure().invoke(e -> LOG.errorf("Saga recovery run failed: %s", e.getMessage()))
+                .onFailure().recoverWithNull();
+    }
+
+    private Uni<Void> recoverBatch(List<SagaState> stale) {
+        if (stale.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        LOG.infof("Recovering %d stale sagas", stale.size());
+        return Multi.createFrom().iterable(stale)
+                .onItem().transformToUni(sagaState -> VertxContexts.onNewContext(vertx, () -> recoverOne(sagaState)))
+                .merge(parallelism)
+                .collect().last()
+                .replaceWithVoid();
+    }
+
+    private Uni<String> recoverOne(SagaState sagaState) {
+        return sagaStateRepository.claim(sagaState.getOrderId(), sagaState.getUpdatedAt())
+                .onItem().transformToUni(claimed -> claimed
+                        ? orderSagaOrchestrator.recover(sagaState).onItem().transform(SagaStep::name)
+                        : Uni.createFrom().item("skipped"))
+                .onFailure().recoverWithItem(e -> {
+                    LOG.errorf("Failed to recover saga for orderId=%d: %s", sagaState.getOrderId(), e.getMessage());
+                    return "failed";
+                })
+                .invoke(outcome -> Counter.builder("amazoff.saga.recovery.recovered")
+                        .description("Sagas processed by the recovery worker")
+                        .tag("outcome", outcome.toLowerCase())
+                        .register(registry)
+                        .increment());
+    }
+}
@@ -1,16 +1,33 @@
 package services;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dto.BuyerDTO;
 import exceptions.errors.BuyerNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.scheduler.Scheduled;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.*;
 import org.jboss.logging.Logger;
+import utils.DependencyGuard;
+import utils.DependencyGuards;
+import utils.MicroBatcher;
+import utils.PendingRequests;
+import utils.InboundConsumer;
+import utils.RabbitRpc;
+import utils.VertxContexts;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 @ApplicationScoped
 public class BuyerClientService {
@@ -21,59 +38,198 @@ public class BuyerClientService {
     @Channel("get-buyer-requests")
     Emitter<JsonObject> requestEmitter;
 
-    private final ConcurrentHashMap<String, CompletableFuture<BuyerDTO>> pendingRequests = new ConcurrentHashMap<>();
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    DependencyGuards dependencyGuards;
+
+    @ConfigProperty(name = "amazoff.rpc.timeout.get-buyer", defaultValue = "3s")
+    Duration timeout;
+
+    @ConfigProperty(name = "amazoff.cache.buyers.max-size", defaultValue = "10000")
+    long cacheMaxSize;
+
+    @ConfigProperty(name = "amazoff.cache.buyers.ttl", defaultValue = "10m")
+    Duration cacheTtl;
+
+    @ConfigProperty(name = "amazoff.cache.buyers.refresh-after", defaultValue = "1m")
+    Duration cacheRefreshAfter;
+
+    @ConfigProperty(name = "amazoff.batching.get-buyer.enabled", defaultValue = "false")
+    boolean batchingEnabled;
+
+    @ConfigProperty(name = "amazoff.batching.get-buyer.window", defaultValue = "5ms")
+    Duration batchWindow;
+
+    @ConfigProperty(name = "amazoff.batching.get-buyer.max-size", defaultValue = "50")
+    int batchMaxSize;
+
+    private record BuyerLookup(String keycloakId, long deadline) {
+    }
+
+    private PendingRequests<BuyerDTO> pendingRequests;
+    private AsyncLoadingCache<String, BuyerDTO> buyerCache;
+    private MicroBatcher<BuyerLookup> buyerBatcher;
+    private InboundConsumer buyerReplies;
+    private InboundConsumer buyerUpdates;
+    private DependencyGuard buyerGuard;
+
+    @PostConstruct
+    void init() {
+        pendingRequests = new PendingRequests<>("get-buyer", timeout, registry);
+        buyerGuard = dependencyGuards.create("users", "get-buyer");
+        buyerReplies = new InboundConsumer("get-buyer-responses", registry);
+        buyerUpdates = new InboundConsumer("buyer-updated", registry);
+        // Entries older than refresh-after are still served while a reload runs in the background, and stay served
+        // while the Users circuit is open
+        buyerCache = CaffeineCacheMetrics.monitor(registry, Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .refreshAfterWrite(cacheRefreshAfter)
+                .recordStats()
+                .<String, BuyerDTO>buildAsync((keycloakId, executor) -> buyerGuard.call(() -> fetchBuyer(keycloakId))
+                        .subscribeAsCompletionStage()),
+                "buyers");
+        if (batchingEnabled) {
+            buyerBatcher = new MicroBatcher<>("get-buyer", vertx, batchWindow, batchMaxSize, this::flushBuyerLookups,
+                    registry);
+        }
+    }
+
+    @Scheduled(every = "${amazoff.rpc.reaper-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reapExpiredRequests() {
+        int reaped = pendingRequests.reapExpired();
+        if (reaped > 0) {
+            LOG.warnf("Timed out %d buyer requests without a reply", reaped);
+        }
+    }
 
     public Uni<BuyerDTO> getBuyerByKeycloakId(String keycloakId) {
-        LOG.infof("Requesting buyer details for keycloakId=%s", keycloakId);
-        CompletableFuture<BuyerDTO> future = new CompletableFuture<>();
-        pendingRequests.put(keycloakId, future);
-        JsonObject requestJson = new JsonObject().put("keycloakId", keycloakId);
+        return VertxContexts.fromCompletionStage(() -> buyerCache.get(keycloakId).copy());
+    }
+
+    Uni<BuyerDTO> fetchBuyer(String keycloakId) {
+        PendingRequests.Joined<BuyerDTO> joined = pendingRequests.join(keycloakId);
+        PendingRequests.Pending<BuyerDTO> request = joined.pending();
+
+        if (joined.leader() && buyerBatcher != null) {
+            buyerBatcher.submit(new BuyerLookup(keycloakId, request.deadline()));
+        } else if (joined.leader()) {
+            LOG.infof("Requesting buyer details for keycloakId=%s", keycloakId);
+            JsonObject requestJson = new JsonObject().put("keycloakId", keycloakId);
+            try {
+                requestEmitter.send(RabbitRpc.request(requestJson, request.deadline()));
+            } catch (Exception e) {
+                LOG.errorf("Failed to send buyer request: %s", e.getMessage());
+                pendingRequests.remove(keycloakId);
+                request.future().completeExceptionally(e);
+            }
+        } else {
+            LOG.debugf("Joining in-flight buyer request for keycloakId=%s", keycloakId);
+        }
 
+        // Every caller gets its own copy so a cancelled subscriber does not cancel the shared request
+        return VertxContexts.fromCompletionStage(() -> request.future().copy())
+                .onFailure().invoke(e -> LOG.errorf("Failed to get buyer for keycloakId=%s: %s", keycloakId, e.getMessage()));
+    }
+
+    private void flushBuyerLookups(List<BuyerLookup> lookups) {
+        List<String> keycloakIds = lookups.stream().map(BuyerLookup::keycloakId).toList();
+        long deadline = lookups.stream().mapToLong(BuyerLookup::deadline).min().orElseThrow();
+        LOG.infof("Requesting buyer details for %d keycloakIds", keycloakIds.size());
+        JsonObject requestJson = new JsonObject().put("keycloakIds", keycloakIds);
         try {
-            requestEmitter.send(requestJson);
+            requestEmitter.send(RabbitRpc.request(requestJson, deadline));
         } catch (Exception e) {
-            LOG.errorf("Failed to send buyer request: %s", e.getMessage());
-            pendingRequests.remove(keycloakId);
-            return Uni.createFrom().failure(e);
+            LOG.errorf("Failed to send batched buyer request: %s", e.getMessage());
+            keycloakIds.forEach(keycloakId -> {
+                CompletableFuture<BuyerDTO> future = pendingRequests.remove(keycloakId);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            });
         }
-        
-        return Uni.createFrom().completionStage(future)
-                .onFailure().invoke(e -> {
-                    pendingRequests.remove(keycloakId);
-                    LOG.errorf("Failed to get buyer for keycloakId=%d: %s", keycloakId, e.getMessage());
-                });
     }
 
     @Incoming("get-buyer-responses")
     public Uni<Void> onBuyerResponse(Message<JsonObject> message) {
         LOG.info("Received buyer response from Users service");
-        JsonObject json = message.getPayload();
+        return buyerReplies.consume(message, json -> {
+            if (json.containsKey("buyers")) {
+                onBatchedBuyerResponse(json);
+                return;
+            }
 
-        if (json.getBoolean("error", false)) {
-            String keycloakId = json.getString("keycloakId");
-            String errorMessage = json.getString("message", "Unknown error");
-            LOG.warnf("Received error response for keycloakId=%s: %s", keycloakId, errorMessage);
+            if (json.getBoolean("error", false)) {
+                String keycloakId = json.getString("keycloakId");
+                String errorMessage = json.getString("message", "Unknown error");
+                LOG.warnf("Received error response for keycloakId=%s: %s", keycloakId, errorMessage);
 
-            CompletableFuture<BuyerDTO> future = pendingRequests.remove(keycloakId);
+                CompletableFuture<BuyerDTO> future = pendingRequests.remove(keycloakId);
+                if (future != null) {
+                    future.completeExceptionally(new BuyerNotFoundException(keycloakId));
+                }
+                return;
+            }
+
+            BuyerDTO buyer;
+            try {
+                buyer = json.mapTo(BuyerDTO.class);
+            } catch (Exception e) {
+                LOG.errorf("Failed to parse buyer response: %s", e.getMessage());
+                String keycloakId = json.getString("keycloakId");
+                CompletableFuture<BuyerDTO> future = keycloakId != null ? pendingRequests.remove(keycloakId) : null;
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            }
+
+            CompletableFuture<BuyerDTO> future = pendingRequests.remove(buyer.keycloakId);
             if (future != null) {
-                future.completeExceptionally(new BuyerNotFoundException(keycloakId));
+                future.complete(buyer);
             }
-            return Uni.createFrom().completionStage(message.ack()).replaceWithVoid();
-        }
+        });
+    }
 
-        BuyerDTO buyer;
-        try {
-            buyer = json.mapTo(BuyerDTO.class);
-        } catch (Exception e) {
-            LOG.errorf("Failed to parse buyer response: %s", e.getMessage());
-            return Uni.createFrom().completionStage(message.ack()).replaceWithVoid();
+    private void onBatchedBuyerResponse(JsonObject json) {
+        JsonArray buyers = json.getJsonArray("buyers");
+        for (int i = 0; i < buyers.size(); i++) {
+            BuyerDTO buyer;
+            try {
+                buyer = buyers.getJsonObject(i).mapTo(BuyerDTO.class);
+            } catch (Exception e) {
+                LOG.errorf("Failed to parse buyer in batched response: %s", e.getMessage());
+                continue;
+            }
+            CompletableFuture<BuyerDTO> future = pendingRequests.remove(buyer.keycloakId);
+            if (future != null) {
+                future.complete(buyer);
+            }
         }
 
-        String keycloakId = buyer.keycloakId;
-        CompletableFuture<BuyerDTO> future = pendingRequests.remove(keycloakId);
-        if (future != null) {
-            future.complete(buyer);
+        JsonArray missing = json.getJsonArray("missing", new JsonArray());
+        for (int i = 0; i < missing.size(); i++) {
+            String keycloakId = missing.getString(i);
+            CompletableFuture<BuyerDTO> future = pendingRequests.remove(keycloakId);
+            if (future != null) {
+                future.completeExceptionally(new BuyerNotFoundException(keycloakId));
+            }
         }
-        return Uni.createFrom().completionStage(message.ack()).replaceWithVoid();
+    }
+
+    @Incoming("buyer-updated")
+    public Uni<Void> onBuyerUpdated(Message<JsonObject> message) {
+        return buyerUpdates.consume(message, json -> {
+            String keycloakId = json.getString("keycloakId");
+            if (keycloakId != null) {
+                LOG.debugf("Invalidating cached buyer for keycloakId=%s", keycloakId);
+                buyerCache.synchronous().invalidate(keycloakId);
+            }
+        });
     }
 }
\ No newline at end of file
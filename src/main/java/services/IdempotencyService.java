@@ -0,0 +1,176 @@
+package services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import dto.CreateOrderRequest;
+import entities.Order;
+import enums.IdempotencyStatus;
+import exceptions.errors.IdempotencyKeyInProgressException;
+import exceptions.errors.IdempotencyKeyMismatchException;
+import interfaces.IIdempotencyRepository;
+import interfaces.IOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import utils.VertxContexts;
+
+/**
+ * Runs an order creation at most once per user and Idempotency-Key. Retries of a finished request get the
+ * original order back; retries of a running one wait for it, on this pod through the shared future and
+ * across pods by polling the key's record until it completes.
+ */
+@ApplicationScoped
+public class IdempotencyService {
+
+    private static final Logger LOG = Logger.getLogger(IdempotencyService.class);
+
+    private final IIdempotencyRepository idempotencyRepository;
+    private final IOrderService orderService;
+    private final Vertx vertx;
+    private final MeterRegistry registry;
+    private final Duration retention;
+    private final Duration lease;
+    private final Duration wait;
+    private final Duration pollInterval;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private record InFlight(String requestHash, CompletableFuture<Order> result) {
+    }
+
+    public IdempotencyService(IIdempotencyRepository idempotencyRepository, IOrderService orderService, Vertx vertx,
+            MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.idempotency.retention", defaultValue = "24h") Duration retention,
+            @ConfigProperty(name = "amazoff.idempotency.lease", defaultValue = "1m") Duration lease,
+            @ConfigProperty(name = "amazoff.idempotency.wait", defaultValue = "10s") Duration wait,
+            @ConfigProperty(name = "amazoff.idempotency.poll-interval", defaultValue = "200ms") Duration pollInterval) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.orderService = orderService;
+        this.vertx = vertx;
+        this.registry = registry;
+        this.retention = retention;
+        this.lease = lease;
+        this.wait = wait;
+        this.pollInterval = pollInterval;
+    }
+
+    public Uni<Order> createOnce(String keycloakId, String idempotencyKey, CreateOrderRequest request,
+            Supplier<Uni<Order>> create) {
+        String requestHash = hash(request);
+        String localKey = keycloakId + "\n" + idempotencyKey;
+        InFlight own = new InFlight(requestHash, new CompletableFuture<>());
+        InFlight running = inFlight.putIfAbsent(localKey, own);
+        if (running != null) {
+            if (!running.requestHash().equals(requestHash)) {
+                count("mismatch");
+                return Uni.createFrom().failure(new IdempotencyKeyMismatchException(idempotencyKey));
+            }
+            count("joined");
+            LOG.infof("Joining in-flight request for Idempotency-Key=%s", idempotencyKey);
+            return VertxContexts.fromCompletionStage(running::result)
+                    .ifNoItem().after(wait).failWith(() -> {
+                        count("in-progress");
+                        return new IdempotencyKeyInProgressException(idempotencyKey);
+                    });
+        }
+
+        return idempotencyRepository.claim(keycloakId, idempotencyKey, requestHash, LocalDateTime.now().plus(lease))
+                .chain(claimed -> claimed
+                        ? run(keycloakId, idempotencyKey, create)
+                        : replay(keycloakId, idempotencyKey, requestHash, System.nanoTime() + wait.toNanos()))
+                // Also runs when the first caller goes away, so requests joined on this pod are never left waiting
+                .onTermination().invoke((order, error, cancelled) -> {
+                    inFlight.remove(localKey, own);
+                    if (cancelled) {
+                        own.result().completeExceptionally(new IdempotencyKeyInProgressException(idempotencyKey));
+                    } else if (error != null) {
+                        own.result().completeExceptionally(error);
+                    } else {
+                        own.result().complete(order);
+                    }
+                });
+    }
+
+    private Uni<Order> run(String keycloakId, String idempotencyKey, Supplier<Uni<Order>> create) {
+        count("executed");
+        return create.get()
+                .call(order -> idempotencyRepository.complete(keycloakId, idempotencyKey, order.getId(),
+                        LocalDateTime.now().plus(retention)))
+                // The client got an error and no order, so the key is released: the FAILED order row stays and a retry
+                // with the same key runs a new saga next to it. With 202 the key is completed on acceptance, so a saga
+                // that fails later keeps it and retries replay the FAILED order, which is what the client was shown
+                .onFailure().call(() -> idempotencyRepository.release(keycloakId, idempotencyKey)
+                        .onFailure().invoke(e -> LOG.warnf("Failed to release Idempotency-Key=%s: %s",
+                                idempotencyKey, e.getMessage()))
+                        .onFailure().recoverWithNull());
+    }
+
+    private Uni<Order> replay(String keycloakId, String idempotencyKey, String requestHash, long deadline) {
+        return idempotencyRepository.find(keycloakId, idempotencyKey)
+                .chain(record -> {
+                    if (record == null || record.getExpiresAt().isBefore(LocalDateTime.now())) {
+                        // Released or expired since the claim failed; the client retries and claims it
+                        return Uni.createFrom().failure(new IdempotencyKeyInProgressException(idempotencyKey));
+                    }
+                    if (!record.getRequestHash().equals(requestHash)) {
+                        count("mismatch");
+                        return Uni.createFrom().failure(new IdempotencyKeyMismatchException(idempotencyKey));
+                    }
+                    if (record.getStatus() == IdempotencyStatus.COMPLETED) {
+                        count("replayed");
+                        LOG.infof("Replaying orderId=%d for Idempotency-Key=%s", record.getOrderId(), idempotencyKey);
+                        return orderService.read(record.getOrderId());
+                    }
+                    if (System.nanoTime() >= deadline) {
+                        count("in-progress");
+                        return Uni.createFrom().failure(new IdempotencyKeyInProgressException(idempotencyKey));
+                    }
+                    return delay(pollInterval)
+                            .chain(() -> replay(keycloakId, idempotencyKey, requestHash, deadline));
+                });
+    }
+
+    @Scheduled(every = "${amazoff.idempotency.cleanup-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> deleteExpired() {
+        return idempotencyRepository.deleteExpired(LocalDateTime.now())
+                .invoke(deleted -> LOG.debugf("Deleted %d expired idempotency keys", deleted))
+                .replaceWithVoid();
+    }
+
+    // Vert.x timers fire on the context that set them, so the session of the caller stays usable
+    private Uni<Void> delay(Duration duration) {
+        return Uni.createFrom().emitter(emitter -> vertx.setTimer(duration.toMillis(), id -> emitter.complete(null)));
+    }
+
+    private static String hash(CreateOrderRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(Json.encode(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void count(String outcome) {
+        Counter.builder("amazoff.idempotency.requests")
+                .description("Create requests with an Idempotency-Key by outcome")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+}
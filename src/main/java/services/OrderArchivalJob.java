@@ -0,0 +1,70 @@
+package services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import enums.OrderStatus;
+import interfaces.IOrderArchiveRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Moves orders in a terminal status that are older than {@code amazoff.archive.after} out of the live tables,
+ * one transaction per batch, so the live tables and their indexes only hold the working set.
+ */
+@ApplicationScoped
+public class OrderArchivalJob {
+
+    private static final Logger LOG = Logger.getLogger(OrderArchivalJob.class);
+    private static final Set<OrderStatus> ARCHIVABLE = Arrays.stream(OrderStatus.values())
+            .filter(OrderStatus::isTerminal)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final IOrderArchiveRepository archiveRepository;
+    private final boolean enabled;
+    private final Duration after;
+    private final int batchSize;
+    private final Counter archived;
+
+    public OrderArchivalJob(IOrderArchiveRepository archiveRepository, MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.archive.enabled", defaultValue = "true") boolean enabled,
+            @ConfigProperty(name = "amazoff.archive.after", defaultValue = "90d") Duration after,
+            @ConfigProperty(name = "amazoff.archive.batch-size", defaultValue = "1000") int batchSize) {
+        this.archiveRepository = archiveRepository;
+        this.enabled = enabled;
+        this.after = after;
+        this.batchSize = batchSize;
+        this.archived = Counter.builder("amazoff.archive.orders")
+                .description("Orders moved from the live tables to the archive")
+                .register(registry);
+    }
+
+    @Scheduled(every = "${amazoff.archive.interval}", delayed = "${amazoff.archive.initial-delay}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> archiveFinishedOrders() {
+        if (!enabled) {
+            return Uni.createFrom().voidItem();
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(after);
+        return Uni.createFrom().deferred(() -> archiveRepository.archive(cutoff, ARCHIVABLE, batchSize))
+                .invoke(moved -> archived.increment(moved))
+                .repeat().whilst(moved -> moved == batchSize)
+                .collect().with(Collectors.summingInt(Integer::intValue))
+                .invoke(total -> {
+                    if (total > 0) {
+                        LOG.infof("Archived %d orders placed before %s", total, cutoff);
+                    }
+                })
+                .onFailure().invoke(e -> LOG.errorf("Order archival run failed: %s", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+}
@@ -1,21 +1,37 @@
 package services;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
+import dto.BuyerDTO;
 import dto.CreateOrderRequest;
+import dto.DailyRevenueDTO;
+import dto.OrderHistoryQuery;
+import dto.OrderPage;
+import dto.OrderSummaryPage;
+import dto.ProductDTO;
+import dto.ResolvedOrder;
 import dto.UpdateOrderStatusRequest;
+import dto.UserSpendDTO;
 import entities.Order;
 import entities.OrderItem;
 import enums.OrderStatus;
 import exceptions.errors.BuyerNotFoundException;
+import exceptions.errors.IllegalStatusTransitionException;
 import exceptions.errors.OrderNotFoundException;
 import interfaces.IOrderRepository;
 import interfaces.IOrderService;
+import interfaces.IOrderSummaryRepository;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
 import org.jboss.logging.Logger;
 import org.jboss.logging.MDC;
+import utils.StageTimer;
 
 @ApplicationScoped
 public class OrderService implements IOrderService {
@@ -23,96 +39,120 @@ public class OrderService implements IOrderService {
     private static final Logger LOG = Logger.getLogger(OrderService.class);
 
     private final IOrderRepository orderRepository;
+    private final IOrderSummaryRepository orderSummaryRepository;
     private final BuyerClientService buyerClientService;
     private final ProductClientService productClientService;
+    private final StageTimer stageTimer;
 
-    public OrderService(IOrderRepository orderRepository, BuyerClientService buyerClientService,
-            ProductClientService productClientService) {
+    public OrderService(IOrderRepository orderRepository, IOrderSummaryRepository orderSummaryRepository,
+            BuyerClientService buyerClientService, ProductClientService productClientService, StageTimer stageTimer) {
         this.orderRepository = orderRepository;
+        this.orderSummaryRepository = orderSummaryRepository;
         this.buyerClientService = buyerClientService;
         this.productClientService = productClientService;
+        this.stageTimer = stageTimer;
     }
 
     @Override
-    public Uni<Order> createPendingOrder(CreateOrderRequest orderRequest, String keycloakId) {
-        LOG.infof("Creating pending order for buyer keycloakId=%d", keycloakId);
-        return buyerClientService.getBuyerByKeycloakId(keycloakId)
-                .onItem().ifNull().failWith(new BuyerNotFoundException(keycloakId))
-                .onItem().transformToUni(buyer -> {
-                    // 2. Collect all productIds from the order request
-                    List<String> productIds = orderRequest.orderItems.stream() // Changed from
-                                                                               // List<Integer>
-                            .map(item -> item.productId)
-                            .toList();
-
-                    // 3. Fetch product details for all productIds
-                    return productClientService.getProductsByIds(productIds)
-                            .onItem().transformToUni(productDTOs -> {
-                                // 4. Map productId to ProductDTO for quick lookup
-                                var productMap = productDTOs.stream()
-                                        .collect(java.util.stream.Collectors
-                                                .toMap(
-                                                        dto -> dto.id,
-                                                        dto -> dto));
-
-                                // 5. Build OrderItems with product info and requested
-                                // quantity
-                                List<OrderItem> orderItems = orderRequest.orderItems
-                                        .stream()
-                                        .map(req -> {
-                                            var product = productMap.get(
-                                                    req.productId);
-                                            if (product == null) {
-                                                throw new RuntimeException(
-                                                        "Product not found: "
-                                                                + req.productId);
-                                            }
-                                            return new OrderItem(
-                                                    req.productId, // Now
-                                                                   // String
-                                                    product.name,
-                                                    product.price,
-                                                    product.description,
-                                                    req.quantity);
-                                        })
-                                        .toList();
-
-                                // 6. Create Order with PENDING status
-                                Order order = new Order(
-                                        buyer,
-                                        buyer.keycloakId,
-                                        orderItems,
-                                        OrderStatus.PENDING,
-                                        LocalDateTime.now());
-                                orderItems.forEach(item -> item.setOrder(order));
-                                // Persist order, then log with MDC after ID is
-                                // generated
-                                return orderRepository.create(order)
-                                        .invoke(persistedOrder -> {
-                                            MDC.put("orderId",
-                                                    persistedOrder.getId());
-                                            LOG.infof("Order created: orderId=%d, keycloakId=%d, items=%d",
-                                                    persistedOrder.getId(),
-                                                    persistedOrder.getKeycloakId(),
-                                                    orderItems.size());
-                                            MDC.remove("orderId");
-                                        });
-                            });
+    public Uni<Order> resolvePendingOrder(CreateOrderRequest orderRequest, String keycloakId) {
+        LOG.infof("Resolving pending order for buyer keycloakId=%s", keycloakId);
+        List<String> productIds = orderRequest.orderItems.stream()
+                .map(item -> item.productId)
+                .toList();
+
+        // Buyer and product lookups are independent, so both requests are in flight at the same time
+        Uni<BuyerDTO> buyerLookup = stageTimer.time("buyer-lookup",
+                () -> buyerClientService.getBuyerByKeycloakId(keycloakId)
+                        .onItem().ifNull().failWith(new BuyerNotFoundException(keycloakId)));
+        Uni<List<ProductDTO>> productLookup = stageTimer.time("product-lookup",
+                () -> productClientService.getProductsByIds(productIds));
+
+        return Uni.combine().all().unis(buyerLookup, productLookup).asTuple()
+                .onItem().transform(resolved -> buildPendingOrder(orderRequest, resolved.getItem1(), resolved.getItem2()))
+                .onFailure().invoke(e -> LOG.errorf("Failed to resolve order: %s", e.getMessage()));
+    }
+
+    /**
+     * Resolves a batch of orders of one buyer with a single buyer lookup and a single product lookup.
+     * An order referring to an unknown product fails on its own; a failed lookup fails the whole batch.
+     */
+    public Uni<List<ResolvedOrder>> resolvePendingOrders(List<CreateOrderRequest> orderRequests, String keycloakId) {
+        LOG.infof("Resolving %d pending orders for buyer keycloakId=%s", orderRequests.size(), keycloakId);
+        List<String> productIds = orderRequests.stream()
+                .flatMap(request -> request.orderItems.stream())
+                .map(item -> item.productId)
+                .distinct()
+                .toList();
+
+        Uni<BuyerDTO> buyerLookup = stageTimer.time("buyer-lookup",
+                () -> buyerClientService.getBuyerByKeycloakId(keycloakId)
+                        .onItem().ifNull().failWith(new BuyerNotFoundException(keycloakId)));
+        Uni<List<ProductDTO>> productLookup = stageTimer.time("product-lookup",
+                () -> productClientService.getProductsByIds(productIds));
+
+        return Uni.combine().all().unis(buyerLookup, productLookup).asTuple()
+                .onItem().transform(resolved -> orderRequests.stream()
+                        .map(request -> {
+                            try {
+                                return new ResolvedOrder(
+                                        buildPendingOrder(request, resolved.getItem1(), resolved.getItem2()), null);
+                            } catch (RuntimeException e) {
+                                return new ResolvedOrder(null, e.getMessage());
+                            }
+                        })
+                        .toList())
+                .onFailure().invoke(e -> LOG.errorf("Failed to resolve order batch: %s", e.getMessage()));
+    }
+
+    private Order buildPendingOrder(CreateOrderRequest orderRequest, BuyerDTO buyer, List<ProductDTO> productDTOs) {
+        Map<String, ProductDTO> productMap = productDTOs.stream()
+                .collect(Collectors.toMap(dto -> dto.id, dto -> dto));
+
+        List<OrderItem> orderItems = orderRequest.orderItems.stream()
+                .map(req -> {
+                    ProductDTO product = productMap.get(req.productId);
+                    if (product == null) {
+                        throw new RuntimeException("Product not found: " + req.productId);
+                    }
+                    return new OrderItem(
+                            req.productId,
+                            product.name,
+                            product.price,
+                            product.description,
+                            req.quantity);
                 })
-                .onFailure().invoke(e -> LOG.errorf("Failed to create order: %s", e.getMessage()));
+                .toList();
+
+        Order order = new Order(
+                buyer,
+                buyer.keycloakId,
+                orderItems,
+                OrderStatus.PENDING,
+                LocalDateTime.now());
+        orderItems.forEach(item -> item.setOrder(order));
+        return order;
     }
 
     @Override
     public Uni<Order> read(int id) {
+        return read(id, false);
+    }
+
+    @Override
+    public Uni<Order> read(int id, boolean includeArchived) {
         MDC.put("orderId", id);
         LOG.infof("Reading order: orderId=%d", id);
-        return orderRepository.read(id)
+        return orderRepository.read(id, includeArchived)
                 .onItem().ifNull().failWith(new OrderNotFoundException(id))
                 .onItem()
                 .invoke(order -> LOG.infof("Order read successfully: orderId=%d", order.getId()))
                 .onItem()
                 .transformToUni(order -> buyerClientService.getBuyerByKeycloakId(order.getKeycloakId())
                         .onItem().invoke(order::setBuyer)
+                        // The order is still useful without its buyer while the Users service is unavailable
+                        .onFailure(e -> !(e instanceof BuyerNotFoundException)).invoke(e -> LOG.warnf(
+                                "Serving orderId=%d without buyer details: %s", order.getId(), e.getMessage()))
+                        .onFailure(e -> !(e instanceof BuyerNotFoundException)).recoverWithNull()
                         .replaceWith(order))
                 .onFailure().invoke(e -> LOG.errorf("Failed to read order: %s", e.getMessage()))
                 .eventually(() -> {
@@ -122,29 +162,72 @@ public class OrderService implements IOrderService {
     }
 
     @Override
-    public Uni<List<Order>> readAllByUser(String keycloakId) {
-        LOG.infof("Reading all orders for user: keycloakId=%s", keycloakId);
-        return orderRepository.readAllByUser(keycloakId)
+    public Uni<OrderStatus> readStatus(int id) {
+        return orderRepository.readStatus(id)
+                .onItem().ifNull().failWith(() -> new OrderNotFoundException(id));
+    }
+
+    @Override
+    public Uni<OrderPage> readPageByUser(OrderHistoryQuery query) {
+        LOG.infof("Reading order page for user: keycloakId=%s", query.keycloakId());
+        return orderRepository.readPageByUser(query)
                 .onItem()
-                .invoke(orders -> LOG.infof("Read %d orders for user: keycloakId=%s", orders.size(),
-                        keycloakId))
+                .invoke(page -> LOG.infof("Read %d orders for user: keycloakId=%s", page.orders().size(),
+                        query.keycloakId()))
                 .onFailure()
                 .invoke(e -> LOG.errorf("Failed to read orders for user: %s", e.getMessage()));
     }
 
     @Override
-    public Uni<Order> updateOrderStatus(UpdateOrderStatusRequest updateOrderStatusRequest) {
-        MDC.put("orderId", updateOrderStatusRequest.id);
-        LOG.infof("Updating order status: orderId=%d, newStatus=%s", updateOrderStatusRequest.id,
-                updateOrderStatusRequest.status);
-        return orderRepository.read(updateOrderStatusRequest.id)
-                .onItem().ifNull().failWith(new OrderNotFoundException(updateOrderStatusRequest.id))
+    public Multi<Order> streamByUser(OrderHistoryQuery query) {
+        LOG.infof("Streaming orders for user: keycloakId=%s", query.keycloakId());
+        // Pages are fetched on demand, so at most one page is held in memory whatever the history size
+        return Multi.createBy().repeating()
+                .uni(() -> new AtomicReference<>(query), next -> orderRepository.readPageByUser(next.get())
+                        .invoke(page -> next.set(query.after(page.next()))))
+                .whilst(page -> page.next() != null)
+                .onItem().transformToIterable(OrderPage::orders)
+                .onFailure().invoke(e -> LOG.errorf("Failed to stream orders for user: %s", e.getMessage()));
+    }
+
+    @Override
+    public Uni<OrderSummaryPage> readSummariesByUser(OrderHistoryQuery query) {
+        LOG.infof("Reading order summaries for user: keycloakId=%s", query.keycloakId());
+        return orderSummaryRepository.readPageByUser(query)
                 .onItem()
-                .transform(order -> {
-                    order.setStatus(updateOrderStatusRequest.status);
-                    return order;
-                })
-                .onItem().transformToUni(orderRepository::update)
+                .invoke(page -> LOG.infof("Read %d order summaries for user: keycloakId=%s",
+                        page.summaries().size(), query.keycloakId()))
+                .onFailure()
+                .invoke(e -> LOG.errorf("Failed to read order summaries for user: %s", e.getMessage()));
+    }
+
+    @Override
+    public Uni<UserSpendDTO> readSpendByUser(String keycloakId, LocalDateTime from, LocalDateTime to) {
+        LOG.infof("Reading spend for user: keycloakId=%s", keycloakId);
+        return orderRepository.readSpendByUser(keycloakId, from, to)
+                .onFailure()
+                .invoke(e -> LOG.errorf("Failed to read spend for user: %s", e.getMessage()));
+    }
+
+    @Override
+    public Uni<List<DailyRevenueDTO>> readRevenueByDay(LocalDate from, LocalDate to) {
+        LOG.infof("Reading revenue per day: from=%s, to=%s", from, to);
+        // Both bounds are whole days; the upper one is inclusive
+        return orderRepository.readRevenueByDay(from.atStartOfDay(), to.plusDays(1).atStartOfDay())
+                .onFailure()
+                .invoke(e -> LOG.errorf("Failed to read revenue: %s", e.getMessage()));
+    }
+
+    @Override
+    public Uni<Void> updateOrderStatus(UpdateOrderStatusRequest updateOrderStatusRequest) {
+        int id = updateOrderStatusRequest.id;
+        OrderStatus target = updateOrderStatusRequest.status;
+        MDC.put("orderId", id);
+        LOG.infof("Updating order status: orderId=%d, newStatus=%s", id, target);
+        return orderRepository.updateStatus(id, OrderStatus.sourcesOf(target), target)
+                .onItem().transformToUni(updated -> updated > 0
+                        ? Uni.createFrom().voidItem()
+                        : rejectTransition(id, target))
                 .onFailure()
                 .invoke(e -> LOG.errorf("Failed to update order status: %s", e.getMessage()))
                 .eventually(() -> {
@@ -153,6 +236,25 @@ public class OrderService implements IOrderService {
                 });
     }
 
+    @Override
+    public Uni<Integer> updateOrderStatuses(List<Integer> ids, OrderStatus target) {
+        LOG.infof("Updating status of %d orders: newStatus=%s", ids.size(), target);
+        return orderRepository.updateStatus(ids, OrderStatus.sourcesOf(target), target)
+                .onItem().invoke(updated -> {
+                    if (updated < ids.size()) {
+                        LOG.warnf("Skipped %d orders that cannot move to %s", ids.size() - updated, target);
+                    }
+                });
+    }
+
+    // Only runs when the conditional UPDATE matched nothing, to tell a missing order from an illegal transition
+    private Uni<Void> rejectTransition(int id, OrderStatus target) {
+        return orderRepository.readStatus(id)
+                .onItem().ifNull().failWith(() -> new OrderNotFoundException(id))
+                .onItem().transformToUni(current -> Uni.createFrom()
+                        .failure(new IllegalStatusTransitionException(id, current, target)));
+    }
+
     @Override
     public Uni<Void> delete(int id) {
         MDC.put("orderId", id);
@@ -0,0 +1,81 @@
+package services;
+
+import java.time.Duration;
+import java.util.concurrent.Flow.Processor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import dto.OrderStatusDTO;
+import enums.OrderStatus;
+import exceptions.errors.OrderNotFoundException;
+import interfaces.IOrderRepository;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.operators.multi.processors.BroadcastProcessor;
+import io.smallrye.mutiny.operators.multi.processors.SerializedProcessor;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Status updates of one order until its saga is settled. The status is re-read when this pod changes it and on
+ * a poll interval, which also catches changes made by other pods; only changes are emitted.
+ */
+@ApplicationScoped
+public class OrderStatusStream {
+
+    private static final Logger LOG = Logger.getLogger(OrderStatusStream.class);
+
+    private final IOrderRepository orderRepository;
+    private final Duration pollInterval;
+    private final Duration timeout;
+    // statusChanged is called after commits on any event loop or worker thread; serialized keeps onNext calls in order
+    private final Multi<Integer> changes;
+    private final Processor<Integer, Integer> changeSignals;
+
+    public OrderStatusStream(IOrderRepository orderRepository,
+            @ConfigProperty(name = "amazoff.saga.status-stream.poll-interval", defaultValue = "1s") Duration pollInterval,
+            @ConfigProperty(name = "amazoff.saga.status-stream.timeout", defaultValue = "2m") Duration timeout) {
+        this.orderRepository = orderRepository;
+        this.pollInterval = pollInterval;
+        this.timeout = timeout;
+        SerializedProcessor<Integer, Integer> processor = BroadcastProcessor.<Integer>create().serialized();
+        this.changes = Multi.createFrom().publisher(processor);
+        this.changeSignals = processor;
+    }
+
+    /**
+     * Called after a status change was committed.
+     */
+    public void statusChanged(int orderId) {
+        changeSignals.onNext(orderId);
+    }
+
+    /**
+     * Emits the current status, then every change, and completes after the first status other than PENDING
+     * (the saga outcome) or after the timeout. Every open stream reads the order status once per poll interval,
+     * so a subscriber costs up to timeout / poll-interval point lookups on top of the reads triggered by changes.
+     */
+    public Multi<OrderStatusDTO> follow(int orderId) {
+        return orderRepository.readStatus(orderId)
+                .onItem().ifNull().failWith(() -> new OrderNotFoundException(orderId))
+                .onItem().transformToMulti(initial -> {
+                    // Triggers fire on the ticker and broadcast threads; the session belongs to the request context
+                    Context context = Vertx.currentContext();
+                    AtomicBoolean settled = new AtomicBoolean();
+                    Multi<Integer> triggers = Multi.createBy().merging().streams(
+                            Multi.createFrom().ticks().every(pollInterval).onOverflow().drop().map(tick -> orderId),
+                            changes.select().where(changed -> changed == orderId).onOverflow().drop());
+                    return Multi.createBy().concatenating().streams(
+                                    Multi.createFrom().item(initial),
+                                    triggers.emitOn(command -> context.runOnContext(ignored -> command.run()))
+                                            .onItem().transformToUniAndConcatenate(
+                                                    ignored -> orderRepository.readStatus(orderId)))
+                            .select().first(status -> !settled.getAndSet(status != OrderStatus.PENDING))
+                            .skip().repetitions()
+                            .select().first(timeout)
+                            .map(status -> new OrderStatusDTO(orderId, status));
+                })
+                .onFailure().invoke(e -> LOG.debugf("Status stream for orderId=%d ended: %s", orderId, e.getMessage()));
+    }
+}
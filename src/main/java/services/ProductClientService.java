@@ -1,138 +1,691 @@
 package services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dto.ProductDTO;
 import dto.ReserveStockItem;
 import dto.StockReleaseFailed;
 import dto.StockReleased;
+import dto.StockReserved;
+import entities.OutboxMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.reactive.messaging.*;
 import org.jboss.logging.Logger;
-
+import utils.DependencyGuard;
+import utils.DependencyGuards;
+import utils.MicroBatcher;
+import utils.PendingRequests;
+import utils.InboundConsumer;
+import utils.RabbitRpc;
+import utils.VertxContexts;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class ProductClientService {
 
     private static final Logger LOG = Logger.getLogger(ProductClientService.class);
 
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    DependencyGuards dependencyGuards;
+
+    @ConfigProperty(name = "amazoff.rpc.timeout.get-products", defaultValue = "3s")
+    Duration productsTimeout;
+
+    @ConfigProperty(name = "amazoff.rpc.timeout.reserve-stock", defaultValue = "5s")
+    Duration reserveTimeout;
+
+    @ConfigProperty(name = "amazoff.rpc.timeout.release-stock", defaultValue = "5s")
+    Duration releaseTimeout;
+
+    @ConfigProperty(name = "amazoff.cache.products.max-size", defaultValue = "50000")
+    long productCacheMaxSize;
+
+    @ConfigProperty(name = "amazoff.cache.products.max-staleness", defaultValue = "5m")
+    Duration productMaxStaleness;
+
+    @ConfigProperty(name = "amazoff.batching.get-products.enabled", defaultValue = "false")
+    boolean batchingEnabled;
+
+    @ConfigProperty(name = "amazoff.batching.get-products.window", defaultValue = "5ms")
+    Duration batchWindow;
+
+    @ConfigProperty(name = "amazoff.batching.get-products.max-size", defaultValue = "50")
+    int batchMaxSize;
+
+    @ConfigProperty(name = "amazoff.batching.reserve-stock.enabled", defaultValue = "false")
+    boolean reserveBatchingEnabled;
+
+    @ConfigProperty(name = "amazoff.batching.reserve-stock.window", defaultValue = "5ms")
+    Duration reserveBatchWindow;
+
+    @ConfigProperty(name = "amazoff.batching.reserve-stock.max-size", defaultValue = "50")
+    int reserveBatchMaxSize;
+
+    /**
+     * A stock request staged for the outbox: the message still has to be persisted, the reply is awaited after commit.
+     */
+    public record StockCall(OutboxMessage message, Uni<Object> reply) {
+    }
+
+    private record CachedProduct(ProductDTO product, long fetchedAt) {
+    }
+
+    private record ProductLookup(List<String> ids, CompletableFuture<List<ProductDTO>> future) {
+    }
+
+    private record StockReservation(String reservationId, List<ReserveStockItem> items,
+            CompletableFuture<Object> future) {
+    }
+
+    private Cache<String, CachedProduct> productCache;
+    private DistributionSummary missFanOut;
+    private Timer staleness;
+    private MicroBatcher<ProductLookup> productBatcher;
+    private MicroBatcher<StockReservation> reservationBatcher;
+    private DistributionSummary outboxMergeSize;
+
+    private PendingRequests<List<ProductDTO>> pending;
+    private PendingRequests<Object> reservePending;
+    private PendingRequests<Object> releasePending;
+
+    private InboundConsumer productsReplies;
+    private InboundConsumer reserveReplies;
+    private InboundConsumer releaseReplies;
+    private InboundConsumer productUpdates;
+
+    private DependencyGuard productsGuard;
+    private DependencyGuard reserveGuard;
+    private DependencyGuard releaseGuard;
+
+    @PostConstruct
+    void init() {
+        productsGuard = dependencyGuards.create("products", "get-products");
+        reserveGuard = dependencyGuards.create("products", "reserve-stock");
+        releaseGuard = dependencyGuards.create("products", "release-stock");
+        pending = new PendingRequests<>("get-products", productsTimeout, registry);
+        reservePending = new PendingRequests<>("reserve-stock", reserveTimeout, registry);
+        releasePending = new PendingRequests<>("release-stock", releaseTimeout, registry);
+        productsReplies = new InboundConsumer("get-products-responses", registry);
+        reserveReplies = new InboundConsumer("reserve-stock-responses", registry);
+        releaseReplies = new InboundConsumer("release-stock-responses", registry);
+        productUpdates = new InboundConsumer("product-updated", registry);
+        // Entries are dropped after max-staleness so a missed product-updated event cannot keep a price forever
+        productCache = CaffeineCacheMetrics.monitor(registry, Caffeine.newBuilder()
+                .maximumSize(productCacheMaxSize)
+                .expireAfterWrite(productMaxStaleness)
+                .recordStats()
+                .<String, CachedProduct>build(),
+                "products");
+        missFanOut = DistributionSummary.builder("amazoff.cache.products.miss.fanout")
+                .description("Product ids requested from the Products service per cache miss")
+                .register(registry);
+        staleness = Timer.builder("amazoff.cache.products.staleness")
+                .description("Age of product entries served from the cache")
+                .register(registry);
+        if (batchingEnabled) {
+            // max-size counts product ids, not lookups
+            productBatcher = new MicroBatcher<>("get-products", vertx, batchWindow, batchMaxSize,
+                    lookup -> lookup.ids().size(), this::flushProductLookups, registry);
+        }
+        outboxMergeSize = DistributionSummary.builder("amazoff.batch.size")
+                .description("Items sent per batched message")
+                .tag("batch", "reserve-stock-outbox")
+                .publishPercentileHistogram()
+                .register(registry);
+        if (reserveBatchingEnabled) {
+            reservationBatcher = new MicroBatcher<>("reserve-stock", vertx, reserveBatchWindow, reserveBatchMaxSize,
+                    this::flushReservations, registry);
+        }
+    }
+
+    @Scheduled(every = "${amazoff.rpc.reaper-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reapExpiredRequests() {
+        int reaped = pending.reapExpired() + reservePending.reapExpired() + releasePending.reapExpired();
+        if (reaped > 0) {
+            LOG.warnf("Timed out %d product requests without a reply", reaped);
+        }
+    }
+
     @Inject
     @Channel("get-products-requests")
     Emitter<JsonObject> productRequestEmitter;
 
-    private final ConcurrentLinkedQueue<CompletableFuture<List<ProductDTO>>> pending = new ConcurrentLinkedQueue<>();
+    @ConfigProperty(name = "mp.messaging.incoming.get-products-responses.queue.name", defaultValue = "get-products-responses")
+    String productsReplyTo;
 
     public Uni<List<ProductDTO>> getProductsByIds(List<String> ids) { // Changed parameter type
-        LOG.infof("Requesting product details for productIds=%s", ids);
-        JsonObject requestJson = new JsonObject().put("productIds", ids);
+        List<ProductDTO> cached = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String id : new LinkedHashSet<>(ids)) {
+            CachedProduct entry = productCache.getIfPresent(id);
+            if (entry != null) {
+                cached.add(entry.product());
+                staleness.record(now - entry.fetchedAt(), TimeUnit.MILLISECONDS);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            LOG.debugf("Serving productIds=%s from cache", ids);
+            return Uni.createFrom().item(cached);
+        }
 
-        CompletableFuture<List<ProductDTO>> future = new CompletableFuture<>();
-        pending.add(future);
+        missFanOut.record(missing.size());
+        Uni<List<ProductDTO>> fetch = productsGuard.call(
+                () -> productBatcher != null ? fetchProductsBatched(missing) : fetchProducts(missing));
+        return fetch
+                .onItem().transform(fetched -> {
+                    long fetchedAt = System.currentTimeMillis();
+                    fetched.forEach(product -> productCache.put(product.id, new CachedProduct(product, fetchedAt)));
+                    List<ProductDTO> products = new ArrayList<>(cached);
+                    products.addAll(fetched);
+                    return products;
+                });
+    }
+
+    private Uni<List<ProductDTO>> fetchProductsBatched(List<String> ids) {
+        return VertxContexts.fromCompletionStage(() -> {
+            ProductLookup lookup = new ProductLookup(ids, new CompletableFuture<>());
+            productBatcher.submit(lookup);
+            return lookup.future();
+        });
+    }
+
+    private void flushProductLookups(List<ProductLookup> lookups) {
+        List<String> ids = lookups.stream()
+                .flatMap(lookup -> lookup.ids().stream())
+                .distinct()
+                .toList();
+        fetchProducts(ids).subscribe().with(
+                products -> {
+                    Map<String, ProductDTO> byId = products.stream()
+                            .collect(Collectors.toMap(product -> product.id, Function.identity(), (a, b) -> a));
+                    lookups.forEach(lookup -> lookup.future().complete(lookup.ids().stream()
+                            .map(byId::get)
+                            .filter(Objects::nonNull)
+                            .toList()));
+                },
+                failure -> lookups.forEach(lookup -> lookup.future().completeExceptionally(failure)));
+    }
+
+    Uni<List<ProductDTO>> fetchProducts(List<String> ids) {
+        String correlationId = PendingRequests.newCorrelationId();
+        LOG.infof("Requesting product details for productIds=%s, correlationId=%s", ids, correlationId);
+        JsonObject requestJson = new JsonObject().put("productIds", ids);
 
-        productRequestEmitter.send(requestJson);
+        PendingRequests.Pending<List<ProductDTO>> request = pending.register(correlationId);
+        try {
+            productRequestEmitter.send(RabbitRpc.request(requestJson, correlationId, productsReplyTo, request.deadline()));
+        } catch (Exception e) {
+            LOG.errorf("Failed to send products request: %s", e.getMessage());
+            pending.remove(correlationId);
+            return Uni.createFrom().failure(e);
+        }
 
-        return Uni.createFrom().completionStage(future);
+        return VertxContexts.fromCompletionStage(request::future);
     }
 
     @Incoming("get-products-responses")
     public Uni<Void> onProductsResponse(Message<JsonObject> responseJson) {
         LOG.info("Received products response from Products service");
-        JsonObject body = responseJson.getPayload();
-
-        CompletableFuture<List<ProductDTO>> future = pending.poll();
-        if (future == null)
-            return Uni.createFrom().voidItem();
-
-        List<ProductDTO> products = body.getJsonArray("products")
+        return productsReplies.reply(responseJson, pending, body -> body.getJsonArray("products")
                 .stream()
                 .map(obj -> ((JsonObject) obj).mapTo(ProductDTO.class))
-                .toList();
+                .toList());
+    }
 
-        future.complete(products);
-        return Uni.createFrom().voidItem();
+    @Incoming("product-updated")
+    public Uni<Void> onProductUpdated(Message<JsonObject> message) {
+        return productUpdates.consume(message, body -> {
+            String productId = body.getString("product_id", body.getString("productId"));
+            if (productId == null) {
+                return;
+            }
+
+            if (body.containsKey("price")) {
+                LOG.debugf("Refreshing cached product productId=%s", productId);
+                ProductDTO product = body.mapTo(ProductDTO.class);
+                product.id = productId;
+                productCache.put(productId, new CachedProduct(product, System.currentTimeMillis()));
+            } else {
+                LOG.debugf("Invalidating cached product productId=%s", productId);
+                productCache.invalidate(productId);
+            }
+        });
     }
 
+    public static final String RESERVE_STOCK_CHANNEL = "reserve-stock-requests";
+    public static final String RELEASE_STOCK_CHANNEL = "release-stock-requests";
+
     @Inject
-    @Channel("reserve-stock-requests")
+    @Channel(RESERVE_STOCK_CHANNEL)
     Emitter<JsonObject> reserveStockEmitter;
 
-    private final ConcurrentLinkedQueue<CompletableFuture<Object>> reservePending = new ConcurrentLinkedQueue<>();
+    @ConfigProperty(name = "mp.messaging.incoming.reserve-stock-responses.queue.name", defaultValue = "reserve-stock-responses")
+    String reserveReplyTo;
 
-    public Uni<Object> reserveStock(List<ReserveStockItem> items) {
-        LOG.infof("Requesting stock reservation for items=%s", items);
-        JsonObject requestJson = new JsonObject().put("items", items);
+    /**
+     * The key Products records a reservation under, deduplicates redeliveries by and pairs a release with.
+     * A single order's reservation is keyed by the order id.
+     */
+    public static String reservationId(int orderId) {
+        return Integer.toString(orderId);
+    }
 
-        CompletableFuture<Object> future = new CompletableFuture<>();
-        reservePending.add(future);
+    /**
+     * Key for a reservation that is not one order's own, e.g. one sent before the order has an id.
+     */
+    public static String newReservationId(String kind) {
+        return kind + ":" + UUID.randomUUID();
+    }
 
-        reserveStockEmitter.send(requestJson);
+    /**
+     * Reserves directly instead of through the outbox (parallel-reservation mode), under a key chosen by the caller
+     * because the order has no id yet; the release must use the same key.
+     */
+    public Uni<Object> reserveStock(String reservationId, List<ReserveStockItem> items) {
+        if (reservationBatcher == null) {
+            return reserveGuard.call(() -> sendReserveStock(stockRequest(reservationId, items)));
+        }
+        return reserveGuard.call(() -> VertxContexts.fromCompletionStage(() -> {
+            StockReservation reservation = new StockReservation(reservationId, items, new CompletableFuture<>());
+            reservationBatcher.submit(reservation);
+            return reservation.future();
+        }));
+    }
 
-        return Uni.createFrom().completionStage(future);
+    /**
+     * Sends the reservations collected in one window as a single message with the quantities summed per product.
+     * Products answers all or nothing, so when the combined reservation is refused the sagas are reserved one by
+     * one in arrival order: the earliest get the remaining stock and the rest see their own StockReservationFailed
+     * and compensate like any other refused order. Only parallel-reservation mode reserves directly; staged
+     * reservations are merged by the relay. The merged request has its own key and lists each saga's reservation
+     * under the saga's key, like {@link #publishMergedReservations}, so every saga can release its own part.
+     */
+    private void flushReservations(List<StockReservation> reservations) {
+        if (reservations.size() == 1) {
+            StockReservation single = reservations.get(0);
+            sendReserveStock(stockRequest(single.reservationId(), single.items())).subscribe().with(
+                    result -> completeReservation(single, result, "single"),
+                    failure -> failReservation(single, failure));
+            return;
+        }
+
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        reservations.forEach(reservation -> reservation.items()
+                .forEach(item -> quantities.merge(item.productId, item.quantity, Integer::sum)));
+        List<ReserveStockItem> merged = quantities.entrySet().stream()
+                .map(entry -> new ReserveStockItem(entry.getKey(), entry.getValue()))
+                .toList();
+        LOG.infof("Reserving stock for %d sagas in one request, items=%s", reservations.size(), merged);
+        JsonObject requestJson = stockRequest(newReservationId("batch"), merged)
+                .put("reservations", new JsonArray(reservations.stream()
+                        .map(reservation -> stockRequest(reservation.reservationId(), reservation.items()))
+                        .toList()));
+
+        sendReserveStock(requestJson).subscribe().with(
+                result -> {
+                    if (result instanceof StockReserved) {
+                        reservations.forEach(reservation ->
+                                completeReservation(reservation, new StockReserved(reservation.items()), "merged"));
+                    } else {
+                        LOG.warnf("Combined reservation for %d sagas refused, splitting in arrival order",
+                                reservations.size());
+                        reserveInArrivalOrder(reservations);
+                    }
+                },
+                failure -> reservations.forEach(reservation -> failReservation(reservation, failure)));
     }
 
-    @Incoming("reserve-stock-responses")
-    public Uni<Void> onReserveStockResponse(Message<JsonObject> responseJson) {
-        LOG.info("Received reserve stock response from Products service");
-        JsonObject body = responseJson.getPayload();
+    private void reserveInArrivalOrder(List<StockReservation> reservations) {
+        Multi.createFrom().iterable(reservations)
+                .onItem().transformToUniAndConcatenate(reservation -> sendReserveStock(
+                                stockRequest(reservation.reservationId(), reservation.items()))
+                        .onItem().invoke(result -> completeReservation(reservation, result, "split"))
+                        .onFailure().invoke(failure -> failReservation(reservation, failure))
+                        .onFailure().recoverWithNull())
+                .collect().last()
+                .subscribe().with(
+                        ignored -> { },
+                        failure -> LOG.errorf("Splitting combined reservation failed: %s", failure.getMessage()));
+    }
 
-        CompletableFuture<Object> future = reservePending.poll();
-        if (future == null)
-            return Uni.createFrom().voidItem();
+    private void completeReservation(StockReservation reservation, Object result, String mode) {
+        reservationOutcome(mode, result instanceof StockReserved ? "reserved" : "rejected");
+        reservation.future().complete(result);
+    }
+
+    private void failReservation(StockReservation reservation, Throwable failure) {
+        reservationOutcome("failed", "error");
+        reservation.future().completeExceptionally(failure);
+    }
 
-        String status = body.getString("status");
-        if ("StockReserved".equals(status)) {
-            Object reserved = body.mapTo(dto.StockReserved.class);
-            future.complete(reserved);
-        } else if ("StockReservationFailed".equals(status)) {
-            Object failed = body.mapTo(dto.StockReservationFailed.class);
-            future.complete(failed);
-        } else {
-            future.completeExceptionally(new RuntimeException("Unknown reserve stock response"));
+    private void reservationOutcome(String mode, String outcome) {
+        Counter.builder("amazoff.stock.reservations")
+                .description("Saga stock reservations by how they were sent (single, merged, split) and outcome")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    private static JsonObject stockRequest(String reservationId, List<ReserveStockItem> items) {
+        return new JsonObject().put("reservationId", reservationId).put("items", items);
+    }
+
+    private Uni<Object> sendReserveStock(JsonObject requestJson) {
+        String correlationId = PendingRequests.newCorrelationId();
+        LOG.infof("Requesting stock reservation for reservationId=%s, items=%s, correlationId=%s",
+                requestJson.getString("reservationId"), requestJson.getValue("items"), correlationId);
+
+        PendingRequests.Pending<Object> request = reservePending.register(correlationId);
+        try {
+            reserveStockEmitter.send(RabbitRpc.request(requestJson, correlationId, reserveReplyTo, request.deadline()));
+        } catch (Exception e) {
+            LOG.errorf("Failed to send reserve stock request: %s", e.getMessage());
+            reservePending.remove(correlationId);
+            return Uni.createFrom().failure(e);
         }
-        return Uni.createFrom().voidItem();
+
+        return VertxContexts.fromCompletionStage(request::future);
     }
 
-    @Inject
-    @Channel("release-stock-requests")
-    Emitter<JsonObject> releaseStockEmitter;
+    public StockCall prepareReserveStock(int orderId, List<ReserveStockItem> items) {
+        int trial = reserveGuard.rejectIfOpen();
+        StockCall call = prepare(RESERVE_STOCK_CHANNEL, reservePending, reserveReplyTo, orderId,
+                reservationId(orderId), items);
+        return new StockCall(call.message(), reserveGuard.observe(call.reply(), trial));
+    }
 
-    private final ConcurrentLinkedQueue<CompletableFuture<Object>> releasePending = new ConcurrentLinkedQueue<>();
+    /**
+     * One reservation for the items of several orders, under a key of its own: if it is refused, the orders are
+     * reserved under their own ids, which Products must not mistake for redeliveries of the combined one.
+     */
+    public StockCall prepareBatchReserveStock(String reservationId, List<Integer> orderIds,
+            List<ReserveStockItem> items) {
+        int trial = reserveGuard.rejectIfOpen();
+        String correlationId = PendingRequests.newCorrelationId();
+        LOG.infof("Staging batch reservation %s for %d orders, items=%s, correlationId=%s", reservationId,
+                orderIds.size(), items, correlationId);
+        JsonObject requestJson = stockRequest(reservationId, items).put("orderIds", orderIds);
+        OutboxMessage message = new OutboxMessage(RESERVE_STOCK_CHANNEL, correlationId, reserveReplyTo,
+                requestJson.encode());
+        message.setAggregateId(orderIds.get(0));
+        PendingRequests.Pending<Object> request = reservePending.register(correlationId);
+        return new StockCall(message, reserveGuard.observe(VertxContexts.fromCompletionStage(request::future), trial));
+    }
 
-    public Uni<Object> releaseStock(List<ReserveStockItem> items) {
-        LOG.infof("Requesting stock release for items=%s", items);
-        JsonObject requestJson = new JsonObject().put("items", items);
+    /**
+     * Compensation is staged even while the circuit is open; the outbox keeps retrying until Products is back.
+     *
+     * @param reservationId the key the reservation was made under
+     */
+    public StockCall prepareReleaseStock(int orderId, String reservationId, List<ReserveStockItem> items) {
+        StockCall call = prepare(RELEASE_STOCK_CHANNEL, releasePending, releaseReplyTo, orderId, reservationId, items);
+        return new StockCall(call.message(), releaseGuard.observe(call.reply()));
+    }
 
-        CompletableFuture<Object> future = new CompletableFuture<>();
-        releasePending.add(future);
+    /**
+     * Release for a saga nobody in this pod is waiting on (recovery); the reply is dropped as unmatched.
+     */
+    public OutboxMessage releaseStockMessage(int orderId, List<ReserveStockItem> items) {
+        return releaseStockMessage(orderId, reservationId(orderId), items);
+    }
 
-        releaseStockEmitter.send(requestJson);
+    public OutboxMessage releaseStockMessage(int orderId, String reservationId, List<ReserveStockItem> items) {
+        return outboxMessage(RELEASE_STOCK_CHANNEL, PendingRequests.newCorrelationId(), releaseReplyTo, orderId,
+                reservationId, items);
+    }
 
-        return Uni.createFrom().completionStage(future);
+    private StockCall prepare(String channel, PendingRequests<Object> pendingRequests, String replyTo,
+            int orderId, String reservationId, List<ReserveStockItem> items) {
+        String correlationId = PendingRequests.newCorrelationId();
+        OutboxMessage message = outboxMessage(channel, correlationId, replyTo, orderId, reservationId, items);
+        PendingRequests.Pending<Object> request = pendingRequests.register(correlationId);
+        return new StockCall(message, VertxContexts.fromCompletionStage(request::future));
     }
 
-    @Incoming("release-stock-responses")
-    public Uni<Void> onReleaseStockResponse(Message<JsonObject> responseJson) {
-        LOG.info("Received release stock response from Products service");
-        JsonObject body = responseJson.getPayload();
+    private OutboxMessage outboxMessage(String channel, String correlationId, String replyTo,
+            int orderId, String reservationId, List<ReserveStockItem> items) {
+        LOG.infof("Staging %s for orderId=%d, reservationId=%s, items=%s, correlationId=%s", channel, orderId,
+                reservationId, items, correlationId);
+        // reservationId lets the Products service deduplicate redeliveries and pair a release with its reservation;
+        // orderId is only sent when the reservation is the order's own, so it never names someone else's reservation
+        JsonObject requestJson = stockRequest(reservationId, items);
+        if (reservationId.equals(reservationId(orderId))) {
+            requestJson.put("orderId", orderId);
+        }
+        OutboxMessage message = new OutboxMessage(channel, correlationId, replyTo, requestJson.encode());
+        // Orders the release after the reservation it belongs to
+        message.setAggregateId(orderId);
+        return message;
+    }
+
+    /**
+     * Publishes a relayed outbox message; the returned Uni completes once the broker confirmed it.
+     */
+    public Uni<Void> publish(OutboxMessage message) {
+        Emitter<JsonObject> emitter = switch (message.getChannel()) {
+            case RESERVE_STOCK_CHANNEL -> reserveStockEmitter;
+            case RELEASE_STOCK_CHANNEL -> releaseStockEmitter;
+            default -> throw new IllegalArgumentException("No emitter for outbox channel " + message.getChannel());
+        };
+        CompletableFuture<Void> confirmed = new CompletableFuture<>();
+        Message<JsonObject> outgoing = RabbitRpc.request(new JsonObject(message.getPayload()),
+                        message.getCorrelationId(), message.getReplyTo())
+                .withAck(() -> {
+                    confirmed.complete(null);
+                    return CompletableFuture.completedFuture(null);
+                })
+                .withNack(e -> {
+                    confirmed.completeExceptionally(e);
+                    return CompletableFuture.completedFuture(null);
+                });
+        try {
+            emitter.send(outgoing);
+        } catch (Exception e) {
+            return Uni.createFrom().failure(e);
+        }
+        return Uni.createFrom().completionStage(confirmed);
+    }
 
-        CompletableFuture<Object> future = releasePending.poll();
-        if (future == null)
+    /**
+     * Whether the outbox relay may merge this staged reservation with others: a single-order reservation of a saga
+     * waiting in this pod, so the merged reply can be handed to it.
+     */
+    public boolean isMergeableReservation(OutboxMessage message) {
+        return reserveBatchingEnabled
+                && RESERVE_STOCK_CHANNEL.equals(message.getChannel())
+                && reservePending.get(message.getCorrelationId()) != null
+                && !new JsonObject(message.getPayload()).containsKey("orderIds");
+    }
+
+    /**
+     * Publishes the staged reservations of several sagas as one message. "items" is the sum Products checks all or
+     * nothing; "reservations" keeps each order's own items under its reservationId, so Products records, deduplicates
+     * and later releases them per order. The merged message has a reservationId of its own and no orderId, so when it
+     * is refused, the staged messages published one after another in staging order are not taken for redeliveries
+     * of it; the earliest sagas get the remaining stock. The returned Uni completes once the broker confirmed the
+     * merged message.
+     */
+    public Uni<Void> publishMergedReservations(List<OutboxMessage> messages) {
+        List<Integer> orderIds = new ArrayList<>();
+        JsonArray reservations = new JsonArray();
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (OutboxMessage message : messages) {
+            orderIds.add(message.getAggregateId());
+            reservations.add(new JsonObject(message.getPayload()));
+            stagedItems(message).forEach(item -> quantities.merge(item.productId, item.quantity, Integer::sum));
+        }
+        List<ReserveStockItem> merged = quantities.entrySet().stream()
+                .map(entry -> new ReserveStockItem(entry.getKey(), entry.getValue()))
+                .toList();
+        String correlationId = PendingRequests.newCorrelationId();
+        String reservationId = newReservationId("batch");
+        LOG.infof("Reserving stock for orderIds=%s in one request, reservationId=%s, items=%s, correlationId=%s",
+                orderIds, reservationId, merged, correlationId);
+        JsonObject requestJson = stockRequest(reservationId, merged)
+                .put("orderIds", orderIds)
+                .put("reservations", reservations);
+        // Published directly, never stored, so it needs no aggregate of its own
+        OutboxMessage mergedMessage = new OutboxMessage(RESERVE_STOCK_CHANNEL, correlationId, reserveReplyTo,
+                requestJson.encode());
+
+        PendingRequests.Pending<Object> request = reservePending.register(correlationId);
+        request.future().whenComplete((result, failure) -> settleMergedReservations(messages, result, failure));
+        outboxMergeSize.record(messages.size());
+        // Unconfirmed: the staged messages stay unpublished and the next relay run sends them again
+        return publish(mergedMessage).onFailure().invoke(() -> reservePending.remove(correlationId));
+    }
+
+    private void settleMergedReservations(List<OutboxMessage> messages, Object result, Throwable failure) {
+        if (failure != null) {
+            // The outcome is unknown, so every saga compensates with a release under its own orderId
+            messages.forEach(message -> {
+                CompletableFuture<Object> future = reservePending.remove(message.getCorrelationId());
+                if (future != null) {
+                    reservationOutcome("merged", "error");
+                    future.completeExceptionally(failure);
+                }
+            });
+            return;
+        }
+        if (result instanceof StockReserved) {
+            messages.forEach(message -> {
+                CompletableFuture<Object> future = reservePending.remove(message.getCorrelationId());
+                if (future != null) {
+                    reservationOutcome("merged", "reserved");
+                    future.complete(new StockReserved(stagedItems(message)));
+                }
+            });
+            return;
+        }
+        LOG.warnf("Merged reservation for %d sagas refused, publishing them in staging order", messages.size());
+        Multi.createFrom().iterable(messages)
+                .onItem().transformToUniAndConcatenate(this::publishStagedReservation)
+                .collect().last()
+                .subscribe().with(
+                        ignored -> { },
+                        e -> LOG.errorf("Splitting merged reservation failed: %s", e.getMessage()));
+    }
+
+    private Uni<Void> publishStagedReservation(OutboxMessage message) {
+        PendingRequests.Pending<Object> pending = reservePending.get(message.getCorrelationId());
+        if (pending == null) {
+            // Timed out in the meantime; the saga already compensated
             return Uni.createFrom().voidItem();
+        }
+        return publish(message)
+                .chain(() -> Uni.createFrom().completionStage(pending.future().copy()))
+                .invoke(reply -> reservationOutcome("split", reply instanceof StockReserved ? "reserved" : "rejected"))
+                .onFailure().invoke(e -> {
+                    CompletableFuture<Object> future = reservePending.remove(message.getCorrelationId());
+                    if (future != null) {
+                        reservationOutcome("split", "error");
+                        future.completeExceptionally(e);
+                    }
+                })
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    private static List<ReserveStockItem> stagedItems(OutboxMessage message) {
+        return new JsonObject(message.getPayload()).getJsonArray("items").stream()
+                .map(item -> ((JsonObject) item).mapTo(ReserveStockItem.class))
+                .toList();
+    }
 
-        String status = body.getString("status");
-        if ("StockReleased".equals(status)) {
-            Object released = body.mapTo(StockReleased.class);
-            future.complete(released);
-        } else if ("StockReleaseFailed".equals(status)) {
-            Object failed = body.mapTo(StockReleaseFailed.class);
-            future.complete(failed);
-        } else {
-            future.completeExceptionally(new RuntimeException("Unknown release stock response"));
+    @Incoming("reserve-stock-responses")
+    public Uni<Void> onReserveStockResponse(Message<JsonObject> responseJson) {
+        LOG.info("Received reserve stock response from Products service");
+        return reserveReplies.reply(responseJson, reservePending, body -> {
+            String status = body.getString("status");
+            if ("StockReserved".equals(status)) {
+                return body.mapTo(dto.StockReserved.class);
+            } else if ("StockReservationFailed".equals(status)) {
+                return body.mapTo(dto.StockReservationFailed.class);
+            }
+            throw new IllegalArgumentException("Unknown reserve stock response status: " + status);
+        });
+    }
+
+    @Inject
+    @Channel(RELEASE_STOCK_CHANNEL)
+    Emitter<JsonObject> releaseStockEmitter;
+
+    @ConfigProperty(name = "mp.messaging.incoming.release-stock-responses.queue.name", defaultValue = "release-stock-responses")
+    String releaseReplyTo;
+
+    /**
+     * Releases a direct reservation of an order that was never written, under the key it was made with.
+     */
+    public Uni<Object> releaseStock(String reservationId, List<ReserveStockItem> items) {
+        return releaseGuard.call(() -> sendReleaseStock(reservationId, items));
+    }
+
+    private Uni<Object> sendReleaseStock(String reservationId, List<ReserveStockItem> items) {
+        String correlationId = PendingRequests.newCorrelationId();
+        LOG.infof("Requesting stock release for reservationId=%s, items=%s, correlationId=%s", reservationId, items,
+                correlationId);
+        JsonObject requestJson = stockRequest(reservationId, items);
+
+        PendingRequests.Pending<Object> request = releasePending.register(correlationId);
+        try {
+            releaseStockEmitter.send(RabbitRpc.request(requestJson, correlationId, releaseReplyTo, request.deadline()));
+        } catch (Exception e) {
+            LOG.errorf("Failed to send release stock request: %s", e.getMessage());
+            releasePending.remove(correlationId);
+            return Uni.createFrom().failure(e);
         }
-        return Uni.createFrom().voidItem();
+
+        return VertxContexts.fromCompletionStage(request::future);
+    }
+
+    @Incoming("release-stock-responses")
+    public Uni<Void> onReleaseStockResponse(Message<JsonObject> responseJson) {
+        LOG.info("Received release stock response from Products service");
+        return releaseReplies.reply(responseJson, releasePending, body -> {
+            String status = body.getString("status");
+            if ("StockReleased".equals(status)) {
+                return body.mapTo(StockReleased.class);
+            } else if ("StockReleaseFailed".equals(status)) {
+                return body.mapTo(StockReleaseFailed.class);
+            }
+            throw new IllegalArgumentException("Unknown release stock response status: " + status);
+        });
     }
-}
\ No newline at end of file
+}
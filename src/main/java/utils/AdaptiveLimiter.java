@@ -0,0 +1,213 @@
+package utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit that adapts to the latency of the calls it admits (AIMD). A call that finishes within the latency
+ * target while the limit is in use raises the limit by 1/limit, i.e. by about one per round of calls; a slower call or a
+ * failure accepted by {@code isDrop} multiplies it by the backoff ratio, at most once per latency target.
+ * Calls above the limit wait in a bounded FIFO queue and are rejected when the queue is full or their wait times out.
+ */
+public class AdaptiveLimiter {
+
+    public enum Rejection {
+        QUEUE_FULL,
+        QUEUE_TIMEOUT
+    }
+
+    /**
+     * A slot held by an admitted call. Releasing it more than once has no effect.
+     */
+    public final class Permit {
+        private final long admittedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release(Throwable failure) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.release(System.nanoTime() - admittedAt, failure);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final CompletableFuture<Permit> admitted = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+        private volatile long timerId = -1;
+    }
+
+    private final Vertx vertx;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long queueTimeoutMillis;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final Predicate<Throwable> isDrop;
+    private final Function<Rejection, ? extends RuntimeException> rejection;
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private final Counter queueFull;
+    private final Counter queueTimeout;
+    private final Counter decreases;
+    private final Timer queueWait;
+
+    private double limit;
+    private int inFlight;
+    private long lastDecrease;
+
+    public AdaptiveLimiter(String name, Vertx vertx, int initialLimit, int minLimit, int maxLimit, int queueSize,
+            Duration queueTimeout, Duration latencyTarget, double backoffRatio, Predicate<Throwable> isDrop,
+            Function<Rejection, ? extends RuntimeException> rejection, MeterRegistry registry) {
+        this.vertx = vertx;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.queueSize = Math.max(0, queueSize);
+        this.queueTimeoutMillis = Math.max(1, queueTimeout.toMillis());
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.isDrop = isDrop;
+        this.rejection = rejection;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastDecrease = System.nanoTime() - latencyTargetNanos;
+        Gauge.builder("amazoff.admission.limit", this, AdaptiveLimiter::limit)
+                .description("Current concurrency limit")
+                .tag("limiter", name)
+                .register(registry);
+        Gauge.builder("amazoff.admission.in-flight", this, AdaptiveLimiter::inFlight)
+                .description("Admitted calls that have not finished yet")
+                .tag("limiter", name)
+                .register(registry);
+        Gauge.builder("amazoff.admission.queue.depth", this, AdaptiveLimiter::queueDepth)
+                .description("Calls waiting for a slot")
+                .tag("limiter", name)
+                .register(registry);
+        this.queueFull = rejections(name, "queue-full", registry);
+        this.queueTimeout = rejections(name, "queue-timeout", registry);
+        this.decreases = Counter.builder("amazoff.admission.limit.decreases")
+                .description("Times the limit was lowered because calls were slow or timed out")
+                .tag("limiter", name)
+                .register(registry);
+        this.queueWait = Timer.builder("amazoff.admission.queue.wait")
+                .description("Time a call waited in the queue before it was admitted")
+                .tag("limiter", name)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter rejections(String name, String reason, MeterRegistry registry) {
+        return Counter.builder("amazoff.admission.rejections")
+                .description("Calls rejected because the limit was reached")
+                .tag("limiter", name)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public synchronized double limit() {
+        return limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Runs the work once a slot is free; its latency and outcome feed the limit.
+     */
+    public <T> Uni<T> run(Supplier<Uni<T>> work) {
+        return acquire().onItem().transformToUni(permit -> Uni.createFrom().<T>deferred(work::get)
+                .onTermination().invoke((item, failure, cancelled) -> permit.release(failure)));
+    }
+
+    /**
+     * For work that outlives the returned Uni; the caller must release the permit when the work finishes.
+     */
+    public Uni<Permit> acquire() {
+        return Uni.createFrom().deferred(() -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (queue.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                    return Uni.createFrom().item(new Permit());
+                }
+                if (queue.size() >= queueSize) {
+                    queueFull.increment();
+                    return Uni.createFrom().failure(rejection.apply(Rejection.QUEUE_FULL));
+                }
+                waiter = new Waiter();
+                queue.addLast(waiter);
+            }
+            waiter.timerId = vertx.setTimer(queueTimeoutMillis, id -> expire(waiter));
+            return VertxContexts.fromCompletionStage(() -> waiter.admitted)
+                    .onCancellation().invoke(() -> abandon(waiter));
+        });
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+        }
+        queueTimeout.increment();
+        waiter.admitted.completeExceptionally(rejection.apply(Rejection.QUEUE_TIMEOUT));
+    }
+
+    private void abandon(Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                vertx.cancelTimer(waiter.timerId);
+                return;
+            }
+        }
+        // Admitted just before the caller went away
+        waiter.admitted.thenAccept(permit -> permit.release(null));
+    }
+
+    private void release(long latencyNanos, Throwable failure) {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            long now = System.nanoTime();
+            if (latencyNanos > latencyTargetNanos || (failure != null && isDrop.test(failure))) {
+                // Calls that were already running when the first one slowed down must not lower the limit again
+                if (now - lastDecrease >= latencyTargetNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                    decreases.increment();
+                }
+            } else if (inFlight + 1 >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                admitted.add(queue.pollFirst());
+            }
+        }
+        long now = System.nanoTime();
+        for (Waiter waiter : admitted) {
+            vertx.cancelTimer(waiter.timerId);
+            queueWait.record(now - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            waiter.admitted.complete(new Permit());
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package utils;
+
+import exceptions.errors.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.core.Response;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead and circuit breaker for one operation of a downstream service.
+ * The bulkhead caps the calls in flight so a slow dependency cannot hold every pending future; the breaker opens when
+ * the failure ratio over the last {@code windowSize} calls reaches {@code failureRatio}, rejects calls for
+ * {@code openDuration}, then lets {@code halfOpenCalls} trial calls through and closes again once they all succeed.
+ * Trial slots that are not given back within {@code openDuration} (a staged request that was never sent) are handed
+ * out again. Rejections fail fast with 503 and Retry-After.
+ */
+public class DependencyGuard {
+
+    private static final Logger LOG = Logger.getLogger(DependencyGuard.class);
+
+    /**
+     * Passed to {@link #observe(Uni, int)} for a call that is not a half-open trial.
+     */
+    public static final int NO_TRIAL = -1;
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final String dependency;
+    private final String operation;
+    private final int maxConcurrent;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRatio;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final Predicate<Throwable> isFailure;
+    private final MeterRegistry registry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter bulkheadFull;
+    private final Counter circuitOpen;
+
+    private State state = State.CLOSED;
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+    private long openedAt;
+    private long halfOpenedAt;
+    private int trialRound;
+    private int trialsInFlight;
+    private int trialSuccesses;
+
+    public DependencyGuard(String dependency, String operation, int maxConcurrent, int windowSize, int minimumCalls,
+            double failureRatio, Duration openDuration, int halfOpenCalls, Predicate<Throwable> isFailure,
+            MeterRegistry registry) {
+        this.dependency = dependency;
+        this.operation = operation;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRatio = failureRatio;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.isFailure = isFailure;
+        this.registry = registry;
+        this.window = new boolean[this.windowSize];
+        Gauge.builder("amazoff.circuit.state", this, guard -> guard.state().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .tag("dependency", dependency)
+                .tag("operation", operation)
+                .register(registry);
+        Gauge.builder("amazoff.bulkhead.active", active, AtomicInteger::get)
+                .description("Calls in flight to the dependency")
+                .tag("dependency", dependency)
+                .tag("operation", operation)
+                .register(registry);
+        this.bulkheadFull = rejections("bulkhead-full");
+        this.circuitOpen = rejections("circuit-open");
+    }
+
+    private Counter rejections(String reason) {
+        return Counter.builder("amazoff.dependency.rejections")
+                .description("Calls rejected without reaching the dependency")
+                .tag("dependency", dependency)
+                .tag("operation", operation)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public <T> Uni<T> call(Supplier<Uni<T>> work) {
+        return Uni.createFrom().deferred(() -> {
+            if (active.incrementAndGet() > maxConcurrent) {
+                active.decrementAndGet();
+                bulkheadFull.increment();
+                return Uni.createFrom().failure(rejected("too many calls in flight", Duration.ofSeconds(1)));
+            }
+            int trial;
+            try {
+                trial = acquire();
+            } catch (ServiceOverloadedException e) {
+                active.decrementAndGet();
+                return Uni.createFrom().failure(e);
+            }
+            return Uni.createFrom().<T>deferred(work::get)
+                    .onTermination().invoke((item, failure, cancelled) -> {
+                        active.decrementAndGet();
+                        if (cancelled) {
+                            abandon(trial);
+                        } else {
+                            record(trial, failure != null && isFailure.test(failure));
+                        }
+                    });
+        });
+    }
+
+    /**
+     * For requests that are staged now and sent later (outbox): fails fast while the circuit is open, so nothing is
+     * committed that the dependency will probably not answer. Once the open duration is over it admits the request
+     * as a half-open trial; pass the result to {@link #observe(Uni, int)} with the reply.
+     *
+     * @return the trial, or {@link #NO_TRIAL} while the circuit is closed
+     */
+    public int rejectIfOpen() {
+        return acquire();
+    }
+
+    /**
+     * Records the outcome of a reply the guard did not admit itself, e.g. one sent through the outbox.
+     */
+    public <T> Uni<T> observe(Uni<T> reply) {
+        return observe(reply, NO_TRIAL);
+    }
+
+    /**
+     * Records the outcome of a reply admitted by {@link #rejectIfOpen()}.
+     */
+    public <T> Uni<T> observe(Uni<T> reply, int trial) {
+        return reply.onTermination().invoke((item, failure, cancelled) -> {
+            if (cancelled) {
+                abandon(trial);
+            } else {
+                record(trial, failure != null && isFailure.test(failure));
+            }
+        });
+    }
+
+    /**
+     * @return the trial round when the call is a half-open trial, otherwise {@link #NO_TRIAL}
+     */
+    private int acquire() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (state == State.OPEN && now - openedAt >= openDurationNanos) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.CLOSED) {
+                return NO_TRIAL;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsInFlight >= halfOpenCalls && now - halfOpenedAt >= openDurationNanos) {
+                    // The trials never reported back, e.g. their staged requests were rolled back
+                    startTrials(now);
+                }
+                if (trialsInFlight < halfOpenCalls) {
+                    trialsInFlight++;
+                    return trialRound;
+                }
+            }
+        }
+        circuitOpen.increment();
+        throw rejected("circuit open", remainingOpen());
+    }
+
+    private synchronized void abandon(int trial) {
+        if (isCurrentTrial(trial)) {
+            trialsInFlight--;
+        }
+    }
+
+    private synchronized void record(int trial, boolean failed) {
+        if (isCurrentTrial(trial)) {
+            trialsInFlight--;
+        }
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            // Replies to requests nobody rejects (compensation) must be able to close the circuit as well
+            transition(State.HALF_OPEN);
+        }
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failed) {
+                    transition(State.OPEN);
+                } else if (++trialSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+            }
+            case CLOSED -> {
+                if (windowCalls == windowSize && window[windowIndex]) {
+                    windowFailures--;
+                }
+                window[windowIndex] = failed;
+                windowIndex = (windowIndex + 1) % windowSize;
+                windowCalls = Math.min(windowSize, windowCalls + 1);
+                if (failed) {
+                    windowFailures++;
+                }
+                if (windowCalls >= minimumCalls && windowFailures >= failureRatio * windowCalls) {
+                    transition(State.OPEN);
+                }
+            }
+            case OPEN -> {
+                // Late results of calls admitted before the circuit opened
+            }
+        }
+    }
+
+    private boolean isCurrentTrial(int trial) {
+        return trial != NO_TRIAL && trial == trialRound && state == State.HALF_OPEN;
+    }
+
+    private void startTrials(long now) {
+        trialRound = (trialRound + 1) & Integer.MAX_VALUE;
+        trialsInFlight = 0;
+        trialSuccesses = 0;
+        halfOpenedAt = now;
+    }
+
+    private void transition(State to) {
+        LOG.warnf("Circuit %s/%s: %s -> %s (failures %d of %d calls)", dependency, operation, state, to,
+                windowFailures, windowCalls);
+        state = to;
+        switch (to) {
+            case OPEN -> openedAt = System.nanoTime();
+            case HALF_OPEN -> startTrials(System.nanoTime());
+            case CLOSED -> {
+                windowIndex = 0;
+                windowCalls = 0;
+                windowFailures = 0;
+            }
+        }
+        Counter.builder("amazoff.circuit.transitions")
+                .description("Circuit breaker state changes")
+                .tag("dependency", dependency)
+                .tag("operation", operation)
+                .tag("to", to.name().toLowerCase().replace('_', '-'))
+                .register(registry)
+                .increment();
+    }
+
+    private synchronized Duration remainingOpen() {
+        return Duration.ofNanos(Math.max(0, openDurationNanos - (System.nanoTime() - openedAt)));
+    }
+
+    private ServiceOverloadedException rejected(String reason, Duration retryAfter) {
+        return new ServiceOverloadedException(dependency + " service unavailable for " + operation + ": " + reason,
+                Response.Status.SERVICE_UNAVAILABLE, retryAfter);
+    }
+}
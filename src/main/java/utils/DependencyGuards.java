@@ -0,0 +1,57 @@
+package utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.WebApplicationException;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+/**
+ * Builds the {@link DependencyGuard} of each downstream operation from {@code amazoff.resilience}. The breaker settings
+ * are shared; the bulkhead size is per operation.
+ */
+@ApplicationScoped
+public class DependencyGuards {
+
+    private final Config config;
+    private final MeterRegistry registry;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRatio;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    private final int defaultMaxConcurrent;
+
+    public DependencyGuards(Config config, MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.resilience.circuit-breaker.window-size", defaultValue = "20") int windowSize,
+            @ConfigProperty(name = "amazoff.resilience.circuit-breaker.minimum-calls", defaultValue = "10") int minimumCalls,
+            @ConfigProperty(name = "amazoff.resilience.circuit-breaker.failure-ratio", defaultValue = "0.5") double failureRatio,
+            @ConfigProperty(name = "amazoff.resilience.circuit-breaker.open-duration", defaultValue = "10s") Duration openDuration,
+            @ConfigProperty(name = "amazoff.resilience.circuit-breaker.half-open-calls", defaultValue = "3") int halfOpenCalls,
+            @ConfigProperty(name = "amazoff.resilience.bulkhead.default", defaultValue = "100") int defaultMaxConcurrent) {
+        this.config = config;
+        this.registry = registry;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatio = failureRatio;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+    }
+
+    public DependencyGuard create(String dependency, String operation) {
+        int maxConcurrent = config.getOptionalValue("amazoff.resilience.bulkhead." + operation, Integer.class)
+                .orElse(defaultMaxConcurrent);
+        return new DependencyGuard(dependency, operation, maxConcurrent, windowSize, minimumCalls, failureRatio,
+                openDuration, halfOpenCalls, DependencyGuards::isFailure, registry);
+    }
+
+    /**
+     * Answers like "buyer not found" mean the dependency is healthy; only errors and timeouts count against it.
+     */
+    private static boolean isFailure(Throwable failure) {
+        return !(failure instanceof WebApplicationException e) || e.getResponse().getStatus() >= 500;
+    }
+}
@@ -0,0 +1,107 @@
+package utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.reactive.messaging.rabbitmq.IncomingRabbitMQMetadata;
+import io.vertx.core.json.JsonObject;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the handler of one incoming channel off the event loop and acknowledges explicitly: ack once the handler
+ * (and with it the waiting future) completed, nack when it threw, so the connector's failure strategy can
+ * dead-letter the message. How many messages run at once is the channel's {@code concurrency} setting.
+ */
+public class InboundConsumer {
+
+    private static final Logger LOG = Logger.getLogger(InboundConsumer.class);
+
+    private final String channel;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer lag;
+    private final Timer processed;
+    private final Timer failed;
+
+    public InboundConsumer(String channel, MeterRegistry registry) {
+        this.channel = channel;
+        Gauge.builder("amazoff.messaging.in-flight", inFlight, AtomicInteger::get)
+                .description("Messages handed to the handler and not yet acked or nacked")
+                .tag("channel", channel)
+                .register(registry);
+        this.lag = Timer.builder("amazoff.messaging.consumer.lag")
+                .description("Time from publish (message timestamp) to the start of processing")
+                .tag("channel", channel)
+                .register(registry);
+        this.processed = Timer.builder("amazoff.messaging.processing")
+                .description("Handler time per message")
+                .tag("channel", channel)
+                .tag("outcome", "ack")
+                .register(registry);
+        this.failed = Timer.builder("amazoff.messaging.processing")
+                .description("Handler time per message")
+                .tag("channel", channel)
+                .tag("outcome", "nack")
+                .register(registry);
+    }
+
+    public Uni<Void> consume(Message<JsonObject> message, Consumer<JsonObject> handler) {
+        message.getMetadata(IncomingRabbitMQMetadata.class)
+                .flatMap(metadata -> metadata.getTimestamp(ZoneOffset.UTC))
+                .ifPresent(timestamp -> lag.record(Duration.between(timestamp, ZonedDateTime.now(ZoneOffset.UTC))));
+
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        return Uni.createFrom().item(() -> {
+                    handler.accept(message.getPayload());
+                    return message;
+                })
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+                .onItem().transformToUni(handled -> {
+                    processed.record(Duration.ofNanos(System.nanoTime() - start));
+                    return Uni.createFrom().completionStage(handled.ack());
+                })
+                .onFailure().recoverWithUni(e -> {
+                    failed.record(Duration.ofNanos(System.nanoTime() - start));
+                    LOG.errorf("Rejecting message on channel %s: %s", channel, e.getMessage());
+                    return Uni.createFrom().completionStage(message.nack(e));
+                })
+                .eventually(inFlight::decrementAndGet)
+                .replaceWithVoid();
+    }
+
+    /**
+     * Completes the future waiting for this reply. A reply that cannot be parsed fails the waiting future
+     * right away instead of leaving it to time out, and is nacked.
+     */
+    public <T> Uni<Void> reply(Message<JsonObject> message, PendingRequests<T> pending, Function<JsonObject, T> parser) {
+        return consume(message, body -> {
+            CompletableFuture<T> future = RabbitRpc.correlationId(message)
+                    .map(pending::remove)
+                    .orElse(null);
+            if (future == null) {
+                LOG.warnf("Dropping %s reply without a matching pending request", channel);
+                return;
+            }
+
+            T result;
+            try {
+                result = parser.apply(body);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+            future.complete(result);
+        });
+    }
+}
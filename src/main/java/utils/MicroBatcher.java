@@ -0,0 +1,132 @@
+package utils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Vertx;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Collects items for up to {@code window}, or until their total weight reaches {@code maxSize}, and hands them to the
+ * flusher as one batch. The weight is what the batched message carries per item, e.g. the ids of a lookup; an item
+ * that does not fit into the current batch starts the next one, and an item heavier than {@code maxSize} is sent alone.
+ * The flusher is responsible for completing whatever the individual items are waiting on.
+ */
+public class MicroBatcher<T> {
+
+    private static final Logger LOG = Logger.getLogger(MicroBatcher.class);
+
+    private record Queued<T>(T item, long enqueuedAt) {
+    }
+
+    private final String name;
+    private final Vertx vertx;
+    private final long windowMillis;
+    private final int maxSize;
+    private final ToIntFunction<T> weight;
+    private final Consumer<List<T>> flusher;
+    private final DistributionSummary batchSize;
+    private final Timer queueWait;
+
+    private List<Queued<T>> batch = new ArrayList<>();
+    private int batchWeight;
+    private long timerId = -1;
+
+    public MicroBatcher(String name, Vertx vertx, Duration window, int maxSize, Consumer<List<T>> flusher,
+            MeterRegistry registry) {
+        this(name, vertx, window, maxSize, item -> 1, flusher, registry);
+    }
+
+    public MicroBatcher(String name, Vertx vertx, Duration window, int maxSize, ToIntFunction<T> weight,
+            Consumer<List<T>> flusher, MeterRegistry registry) {
+        this.name = name;
+        this.vertx = vertx;
+        this.windowMillis = Math.max(1, window.toMillis());
+        this.maxSize = Math.max(1, maxSize);
+        this.weight = weight;
+        this.flusher = flusher;
+        this.batchSize = DistributionSummary.builder("amazoff.batch.size")
+                .description("Items sent per batched message")
+                .tag("batch", name)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.queueWait = Timer.builder("amazoff.batch.queue.wait")
+                .description("Time an item waited for its batch to be flushed")
+                .tag("batch", name)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void submit(T item) {
+        int itemWeight = Math.max(1, weight.applyAsInt(item));
+        List<Queued<T>> previous = null;
+        List<Queued<T>> full = null;
+        synchronized (this) {
+            if (!batch.isEmpty() && batchWeight + itemWeight > maxSize) {
+                previous = drain();
+            }
+            batch.add(new Queued<>(item, System.nanoTime()));
+            batchWeight += itemWeight;
+            if (batchWeight >= maxSize) {
+                full = drain();
+            } else if (timerId < 0) {
+                timerId = vertx.setTimer(windowMillis, this::flushOnTimer);
+            }
+        }
+        if (previous != null) {
+            flush(previous);
+        }
+        if (full != null) {
+            flush(full);
+        }
+    }
+
+    private void flushOnTimer(long id) {
+        List<Queued<T>> due;
+        synchronized (this) {
+            if (timerId != id) {
+                return;
+            }
+            due = drain();
+        }
+        flush(due);
+    }
+
+    private List<Queued<T>> drain() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        List<Queued<T>> due = batch;
+        batch = new ArrayList<>();
+        batchWeight = 0;
+        return due;
+    }
+
+    private void flush(List<Queued<T>> due) {
+        if (due.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<T> items = new ArrayList<>(due.size());
+        int total = 0;
+        for (Queued<T> queued : due) {
+            queueWait.record(now - queued.enqueuedAt(), TimeUnit.NANOSECONDS);
+            items.add(queued.item());
+            total += Math.max(1, weight.applyAsInt(queued.item()));
+        }
+        batchSize.record(total);
+        try {
+            flusher.accept(items);
+        } catch (Exception e) {
+            LOG.errorf("Failed to flush %s batch of %d items: %s", name, items.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package utils;
+
+import exceptions.errors.DownstreamTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Futures waiting for a RabbitMQ reply, keyed by correlation id.
+ * The map is split into shards so concurrent response consumers do not contend on the same segment.
+ * Every entry carries a deadline; {@link #reapExpired()} fails and evicts the ones whose reply never arrived.
+ * {@link #join(String)} gives single-flight semantics when the key identifies the request itself rather than the call.
+ */
+public class PendingRequests<T> {
+
+    private static final int DEFAULT_SHARDS = 16;
+
+    public record Pending<T>(CompletableFuture<T> future, long deadline) {
+    }
+
+    public record Joined<T>(Pending<T> pending, boolean leader) {
+    }
+
+    private final String operation;
+    private final Duration timeout;
+    private final ConcurrentHashMap<String, Pending<T>>[] shards;
+    private final Counter timeouts;
+    private final Counter coalesced;
+
+    public PendingRequests(String operation, Duration timeout, MeterRegistry registry) {
+        this(operation, timeout, registry, DEFAULT_SHARDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public PendingRequests(String operation, Duration timeout, MeterRegistry registry, int shardCount) {
+        this.operation = operation;
+        this.timeout = timeout;
+        int size = Integer.highestOneBit(Math.max(1, shardCount));
+        this.shards = new ConcurrentHashMap[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        Gauge.builder("amazoff.rpc.pending", this, PendingRequests::size)
+                .description("Requests waiting for a reply")
+                .tag("operation", operation)
+                .register(registry);
+        this.timeouts = Counter.builder("amazoff.rpc.timeouts")
+                .description("Requests failed because no reply arrived before the deadline")
+                .tag("operation", operation)
+                .register(registry);
+        this.coalesced = Counter.builder("amazoff.rpc.coalesced")
+                .description("Calls that joined an in-flight request instead of sending their own")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    public static String newCorrelationId() {
+        return UUID.randomUUID().toString();
+    }
+
+    public Pending<T> register(String correlationId) {
+        Pending<T> pending = new Pending<>(new CompletableFuture<>(), System.currentTimeMillis() + timeout.toMillis());
+        shard(correlationId).put(correlationId, pending);
+        return pending;
+    }
+
+    public Joined<T> join(String key) {
+        boolean[] leader = {false};
+        Pending<T> pending = shard(key).computeIfAbsent(key, k -> {
+            leader[0] = true;
+            return new Pending<>(new CompletableFuture<>(), System.currentTimeMillis() + timeout.toMillis());
+        });
+        if (!leader[0]) {
+            coalesced.increment();
+        }
+        return new Joined<>(pending, leader[0]);
+    }
+
+    /**
+     * @return the request still waiting for this reply, or null once it was answered or timed out
+     */
+    public Pending<T> get(String correlationId) {
+        return shard(correlationId).get(correlationId);
+    }
+
+    public CompletableFuture<T> remove(String correlationId) {
+        Pending<T> pending = shard(correlationId).remove(correlationId);
+        return pending != null ? pending.future() : null;
+    }
+
+    public int reapExpired() {
+        long now = System.currentTimeMillis();
+        int reaped = 0;
+        for (ConcurrentHashMap<String, Pending<T>> shard : shards) {
+            for (Map.Entry<String, Pending<T>> entry : shard.entrySet()) {
+                Pending<T> pending = entry.getValue();
+                if (pending.deadline() <= now && shard.remove(entry.getKey(), pending)) {
+                    pending.future().completeExceptionally(new DownstreamTimeoutException(operation));
+                    reaped++;
+                }
+            }
+        }
+        if (reaped > 0) {
+            timeouts.increment(reaped);
+        }
+        return reaped;
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, Pending<T>> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private ConcurrentHashMap<String, Pending<T>> shard(String correlationId) {
+        int h = correlationId.hashCode();
+        return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+    }
+}
@@ -0,0 +1,58 @@
+package utils;
+
+import io.smallrye.reactive.messaging.rabbitmq.IncomingRabbitMQMetadata;
+import io.smallrye.reactive.messaging.rabbitmq.OutgoingRabbitMQMetadata;
+import io.vertx.core.json.JsonObject;
+import org.eclipse.microprofile.reactive.messaging.Message;
+
+import java.util.Optional;
+
+public final class RabbitRpc {
+
+    public static final String CORRELATION_ID = "correlationId";
+    public static final String DEADLINE = "deadline";
+    public static final String DEADLINE_HEADER = "x-deadline";
+
+    private RabbitRpc() {
+    }
+
+    public static Message<JsonObject> request(JsonObject payload, String correlationId, String replyTo, long deadline) {
+        OutgoingRabbitMQMetadata.Builder metadata = metadata(deadline)
+                .withCorrelationId(correlationId)
+                .withReplyTo(replyTo);
+        // Also carried in the body for consumers that only echo the payload fields back
+        payload.put(CORRELATION_ID, correlationId).put(DEADLINE, deadline);
+        return Message.of(payload).addMetadata(metadata.build());
+    }
+
+    public static Message<JsonObject> request(JsonObject payload, long deadline) {
+        return Message.of(payload.put(DEADLINE, deadline)).addMetadata(metadata(deadline).build());
+    }
+
+    /**
+     * Request without a broker TTL, for messages that must be delivered even after the caller stopped waiting.
+     */
+    public static Message<JsonObject> request(JsonObject payload, String correlationId, String replyTo) {
+        OutgoingRabbitMQMetadata metadata = OutgoingRabbitMQMetadata.builder()
+                .withContentType("application/json")
+                .withCorrelationId(correlationId)
+                .withReplyTo(replyTo)
+                .build();
+        return Message.of(payload.put(CORRELATION_ID, correlationId)).addMetadata(metadata);
+    }
+
+    public static Optional<String> correlationId(Message<JsonObject> message) {
+        return message.getMetadata(IncomingRabbitMQMetadata.class)
+                .flatMap(IncomingRabbitMQMetadata::getCorrelationId)
+                .or(() -> Optional.ofNullable(message.getPayload().getString(CORRELATION_ID)));
+    }
+
+    private static OutgoingRabbitMQMetadata.Builder metadata(long deadline) {
+        // The per-message TTL lets the broker drop the request once nobody is waiting for the reply anymore
+        long remaining = Math.max(1, deadline - System.currentTimeMillis());
+        return OutgoingRabbitMQMetadata.builder()
+                .withContentType("application/json")
+                .withExpiration(Long.toString(remaining))
+                .withHeader(DEADLINE_HEADER, deadline);
+    }
+}
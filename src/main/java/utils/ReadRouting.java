@@ -0,0 +1,109 @@
+package utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether a read may go to the replica. Users and orders written by this pod within the
+ * read-your-writes window are read from the primary, so a replica that lags behind cannot hide a fresh write.
+ * Replica errors fall back to the primary.
+ */
+@ApplicationScoped
+public class ReadRouting {
+
+    private static final Logger LOG = Logger.getLogger(ReadRouting.class);
+
+    private final MeterRegistry registry;
+    private final boolean replicaEnabled;
+    private final Cache<String, Boolean> recentWrites;
+
+    public ReadRouting(MeterRegistry registry,
+            @ConfigProperty(name = "amazoff.datasource.replica.enabled", defaultValue = "false") boolean replicaEnabled,
+            @ConfigProperty(name = "amazoff.datasource.replica.read-your-writes-window", defaultValue = "5s") Duration window) {
+        this.registry = registry;
+        this.replicaEnabled = replicaEnabled;
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    public void userWrote(String keycloakId) {
+        if (replicaEnabled && keycloakId != null) {
+            recentWrites.put("user:" + keycloakId, Boolean.TRUE);
+        }
+    }
+
+    public void orderWritten(int orderId) {
+        if (replicaEnabled) {
+            recentWrites.put("order:" + orderId, Boolean.TRUE);
+        }
+    }
+
+    public boolean userRecentlyWrote(String keycloakId) {
+        return recentWrites.getIfPresent("user:" + keycloakId) != null;
+    }
+
+    public boolean orderRecentlyWritten(int orderId) {
+        return recentWrites.getIfPresent("order:" + orderId) != null;
+    }
+
+    /**
+     * @param recentlyWritten whether the caller saw a write for this key inside the window
+     * @param replica read on the replica; a null item counts as a miss (e.g. not replicated yet) and goes to the primary
+     */
+    public <T> Uni<T> read(String operation, boolean recentlyWritten, Supplier<Uni<T>> replica, Supplier<Uni<T>> primary) {
+        if (!replicaEnabled) {
+            return count(operation, "primary", primary);
+        }
+        if (recentlyWritten) {
+            fallback(operation, "recent-write");
+            return count(operation, "primary", primary);
+        }
+        return count(operation, "replica", replica)
+                .map(Optional::ofNullable)
+                .onFailure().recoverWithItem(e -> {
+                    LOG.warnf("Replica read %s failed, using primary: %s", operation, e.getMessage());
+                    fallback(operation, "error");
+                    return null;
+                })
+                .onItem().transformToUni(result -> {
+                    if (result != null && result.isPresent()) {
+                        return Uni.createFrom().item(result.get());
+                    }
+                    if (result != null) {
+                        fallback(operation, "missing");
+                    }
+                    return count(operation, "primary", primary);
+                });
+    }
+
+    private <T> Uni<T> count(String operation, String target, Supplier<Uni<T>> query) {
+        Counter.builder("amazoff.db.reads")
+                .description("Order reads by datasource")
+                .tag("operation", operation)
+                .tag("target", target)
+                .register(registry)
+                .increment();
+        return query.get();
+    }
+
+    private void fallback(String operation, String reason) {
+        Counter.builder("amazoff.db.replica.fallbacks")
+                .description("Reads that went to the primary although the replica is enabled")
+                .tag("operation", operation)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,30 @@
+package utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.function.Supplier;
+
+@ApplicationScoped
+public class StageTimer {
+
+    private final MeterRegistry registry;
+
+    public StageTimer(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> Uni<T> time(String stage, Supplier<Uni<T>> work) {
+        return Uni.createFrom().deferred(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return work.get().onTermination().invoke((item, failure, cancelled) -> sample.stop(
+                    Timer.builder("amazoff.saga.stage.duration")
+                            .description("Time spent in each stage of order creation")
+                            .tag("stage", stage)
+                            .tag("outcome", failure == null && !cancelled ? "success" : "failure")
+                            .register(registry)));
+        });
+    }
+}
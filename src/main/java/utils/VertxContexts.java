@@ -0,0 +1,39 @@
+package utils;
+
+import io.quarkus.vertx.core.runtime.context.VertxContextSafetyToggle;
+import io.smallrye.common.vertx.VertxContext;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+public final class VertxContexts {
+
+    private VertxContexts() {
+    }
+
+    /**
+     * Runs the work on a fresh, safe duplicated context. Hibernate Reactive binds its session to the current context,
+     * so work that runs in parallel or outlives the HTTP request must not share the caller's context.
+     */
+    public static <T> Uni<T> onNewContext(Vertx vertx, Supplier<Uni<T>> work) {
+        Context context = VertxContext.createNewDuplicatedContext(vertx.getOrCreateContext());
+        VertxContextSafetyToggle.setContextSafe(context, true);
+        return Uni.createFrom().emitter(emitter -> context.runOnContext(ignored -> work.get()
+                .subscribe().with(emitter::complete, emitter::fail)));
+    }
+
+    /**
+     * Awaits a future that is completed from another thread (reply consumers, broker confirms) and resumes on the
+     * subscriber's context, so a Hibernate Reactive session bound to it can be used after the reply arrives.
+     */
+    public static <T> Uni<T> fromCompletionStage(Supplier<? extends CompletionStage<? extends T>> stage) {
+        return Uni.createFrom().deferred(() -> {
+            Context context = Vertx.currentContext();
+            Uni<T> result = Uni.createFrom().completionStage(stage);
+            return context == null ? result : result.emitOn(command -> context.runOnContext(ignored -> command.run()));
+        });
+    }
+}
@@ -0,0 +1,47 @@
+-- Schema as previously generated by Hibernate. Existing databases are baselined at this version and skip it.
+
+create sequence App_Order_seq start with 1 increment by 50;
+create sequence App_OrderItem_seq start with 1 increment by 100;
+create sequence App_OutboxMessage_seq start with 1 increment by 100;
+
+create table App_Order (
+    id integer not null,
+    keycloak_id varchar(255) not null,
+    orderDate timestamp(6) not null,
+    status varchar(255) not null,
+    primary key (id)
+);
+
+create table App_OrderItem (
+    id integer not null,
+    order_Id integer not null,
+    product_id varchar(255) not null,
+    name varchar(255) not null,
+    description varchar(255) not null,
+    price float(53) not null,
+    quantity integer not null,
+    primary key (id),
+    constraint fk_orderitem_order foreign key (order_Id) references App_Order (id)
+);
+
+create table App_SagaState (
+    order_id integer not null,
+    step varchar(255) not null,
+    reserved_items text,
+    attempts integer not null,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    primary key (order_id)
+);
+
+create table App_OutboxMessage (
+    id bigint not null,
+    aggregate_id integer not null,
+    channel varchar(255) not null,
+    correlation_id varchar(255) not null,
+    reply_to varchar(255),
+    payload text not null,
+    created_at timestamp(6) not null,
+    published_at timestamp(6),
+    primary key (id)
+);
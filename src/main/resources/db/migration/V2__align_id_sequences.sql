@@ -0,0 +1,16 @@
+-- Rows inserted while ids were IDENTITY columns are not known to the pooled sequences.
+-- Hibernate's pooled optimizer hands out (value - increment, value], so each sequence is moved a full
+-- increment past the highest id in use. GREATEST never moves a sequence backwards.
+
+create sequence if not exists App_Order_seq start with 1 increment by 50;
+create sequence if not exists App_OrderItem_seq start with 1 increment by 100;
+create sequence if not exists App_OutboxMessage_seq start with 1 increment by 100;
+
+select setval('App_Order_seq',
+    greatest((select coalesce(max(id), 0) from App_Order), (select last_value from App_Order_seq)) + 50, false);
+
+select setval('App_OrderItem_seq',
+    greatest((select coalesce(max(id), 0) from App_OrderItem), (select last_value from App_OrderItem_seq)) + 100, false);
+
+select setval('App_OutboxMessage_seq',
+    greatest((select coalesce(max(id), 0) from App_OutboxMessage), (select last_value from App_OutboxMessage_seq)) + 100, false);
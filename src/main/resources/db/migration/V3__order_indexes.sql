@@ -0,0 +1,22 @@
+-- User history: keyset pages on (orderDate, id) per user; status is included so the
+-- status filter is answered from the index.
+create index if not exists idx_order_user_history
+    on App_Order (keycloak_id, orderDate desc, id desc) include (status);
+
+-- Status scans for batch jobs and bulk transitions.
+create index if not exists idx_order_status_date
+    on App_Order (status, orderDate);
+
+-- Item loading by order (batch fetch and deletes through the foreign key).
+create index if not exists idx_orderitem_order
+    on App_OrderItem (order_Id);
+
+-- Relay and recovery only ever look at the unfinished rows.
+create index if not exists idx_outbox_unpublished
+    on App_OutboxMessage (id) where published_at is null;
+
+create index if not exists idx_outbox_published_at
+    on App_OutboxMessage (published_at) where published_at is not null;
+
+create index if not exists idx_sagastate_incomplete
+    on App_SagaState (updated_at) where step not in ('CONFIRMED', 'COMPENSATED');
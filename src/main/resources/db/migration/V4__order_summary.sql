@@ -0,0 +1,23 @@
+-- Read model for the order list endpoints, kept in step with App_Order by the application.
+create table App_OrderSummary (
+    order_id integer not null,
+    keycloak_id varchar(255) not null,
+    order_date timestamp(6) not null,
+    status varchar(255) not null,
+    item_count integer not null,
+    total float(53) not null,
+    product_names text not null,
+    primary key (order_id)
+);
+
+create index idx_ordersummary_user_history
+    on App_OrderSummary (keycloak_id, order_date desc, order_id desc) include (status);
+
+-- Backfill from the existing orders; product_names holds the first three item names as a JSON array.
+insert into App_OrderSummary (order_id, keycloak_id, order_date, status, item_count, total, product_names)
+select o.id, o.keycloak_id, o.orderDate, o.status,
+       (select count(*) from App_OrderItem i where i.order_Id = o.id),
+       (select coalesce(sum(i.price * i.quantity), 0) from App_OrderItem i where i.order_Id = o.id),
+       (select coalesce(json_agg(n.name order by n.id), '[]'::json)::text
+          from (select i.id, i.name from App_OrderItem i where i.order_Id = o.id order by i.id limit 3) n)
+from App_Order o;
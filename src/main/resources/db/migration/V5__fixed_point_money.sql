@@ -0,0 +1,40 @@
+-- Prices and totals as fixed-point numbers; float(53) cannot represent cents exactly.
+alter table App_OrderItem
+    alter column price type numeric(12, 2) using round(price::numeric, 2);
+
+alter table App_OrderSummary
+    alter column total type numeric(14, 2) using round(total::numeric, 2);
+
+-- Totals are stored on the order once, when it is created.
+alter table App_Order
+    add column total numeric(14, 2),
+    add column item_count integer;
+
+update App_Order o
+set total = coalesce(i.total, 0),
+    item_count = coalesce(i.item_count, 0)
+from App_Order o2
+left join (
+    select order_Id, sum(price * quantity) as total, count(*) as item_count
+    from App_OrderItem
+    group by order_Id
+) i on i.order_Id = o2.id
+where o.id = o2.id;
+
+update App_OrderSummary s
+set total = o.total
+from App_Order o
+where o.id = s.order_id;
+
+alter table App_Order
+    alter column total set not null,
+    alter column item_count set not null;
+
+-- Spend per user and revenue per day are answered from the indexes without visiting the table.
+drop index if exists idx_order_user_history;
+create index idx_order_user_history
+    on App_Order (keycloak_id, orderDate desc, id desc) include (status, total);
+
+drop index if exists idx_order_status_date;
+create index idx_order_status_date
+    on App_Order (status, orderDate) include (total);
@@ -0,0 +1,93 @@
+-- Cold storage for finished orders. The live tables stay unpartitioned: partitioning them would put
+-- orderDate into the primary key, which the item foreign key and the id lookups cannot provide.
+-- The archive is range-partitioned by month, so whole months can be detached, moved to cheaper
+-- storage or dropped without touching the rest.
+create table App_OrderArchive (
+    id integer not null,
+    keycloak_id varchar(255) not null,
+    orderDate timestamp(6) not null,
+    status varchar(255) not null,
+    total numeric(14, 2) not null,
+    item_count integer not null,
+    archived_at timestamp(6) not null,
+    primary key (id, orderDate)
+) partition by range (orderDate);
+
+create index idx_orderarchive_user_history
+    on App_OrderArchive (keycloak_id, orderDate desc, id desc) include (status);
+
+create index idx_orderarchive_id
+    on App_OrderArchive (id);
+
+create table App_OrderItemArchive (
+    id integer not null,
+    order_Id integer not null,
+    orderDate timestamp(6) not null,
+    product_id varchar(255) not null,
+    name varchar(255) not null,
+    description varchar(255) not null,
+    price numeric(12, 2) not null,
+    quantity integer not null,
+    primary key (id, orderDate)
+) partition by range (orderDate);
+
+create index idx_orderitemarchive_order
+    on App_OrderItemArchive (order_Id);
+
+create function App_ensure_archive_partition(archive_month date) returns void
+language plpgsql as $$
+declare
+    suffix text := to_char(archive_month, 'YYYY_MM');
+    upper_bound date := (archive_month + interval '1 month')::date;
+begin
+    execute format('create table if not exists App_OrderArchive_%s partition of App_OrderArchive'
+        || ' for values from (%L) to (%L)', suffix, archive_month, upper_bound);
+    execute format('create table if not exists App_OrderItemArchive_%s partition of App_OrderItemArchive'
+        || ' for values from (%L) to (%L)', suffix, archive_month, upper_bound);
+end;
+$$;
+
+-- Moves up to batch_size orders in one of the given statuses (comma separated) placed before cutoff,
+-- together with their items, into the archive and drops their summaries. Returns the number moved.
+-- SKIP LOCKED lets several replicas archive at the same time without waiting on each other.
+create function App_archive_orders(cutoff timestamp, statuses text, batch_size integer) returns integer
+language plpgsql as $$
+declare
+    moved_ids integer[];
+    archive_month date;
+begin
+    select array_agg(id) into moved_ids
+    from (
+        select id from App_Order
+        where status = any(string_to_array(statuses, ',')) and orderDate < cutoff
+        order by orderDate
+        limit batch_size
+        for update skip locked
+    ) candidates;
+
+    if moved_ids is null then
+        return 0;
+    end if;
+
+    for archive_month in
+        select distinct date_trunc('month', orderDate)::date from App_Order where id = any(moved_ids)
+    loop
+        perform App_ensure_archive_partition(archive_month);
+    end loop;
+
+    insert into App_OrderArchive (id, keycloak_id, orderDate, status, total, item_count, archived_at)
+    select id, keycloak_id, orderDate, status, total, item_count, now()
+    from App_Order where id = any(moved_ids);
+
+    insert into App_OrderItemArchive (id, order_Id, orderDate, product_id, name, description, price, quantity)
+    select i.id, i.order_Id, o.orderDate, i.product_id, i.name, i.description, i.price, i.quantity
+    from App_OrderItem i join App_Order o on o.id = i.order_Id
+    where i.order_Id = any(moved_ids);
+
+    delete from App_OrderItem where order_Id = any(moved_ids);
+    delete from App_OrderSummary where order_id = any(moved_ids);
+    delete from App_Order where id = any(moved_ids);
+
+    return cardinality(moved_ids);
+end;
+$$;
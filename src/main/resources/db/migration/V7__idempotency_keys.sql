@@ -0,0 +1,14 @@
+-- Outcomes of POST /orders requests sent with an Idempotency-Key, per user.
+create table App_IdempotencyKey (
+    keycloak_id varchar(255) not null,
+    idempotency_key varchar(255) not null,
+    request_hash varchar(64) not null,
+    status varchar(255) not null,
+    order_id integer,
+    created_at timestamp(6) not null,
+    expires_at timestamp(6) not null,
+    primary key (keycloak_id, idempotency_key)
+);
+
+create index idx_idempotencykey_expires_at
+    on App_IdempotencyKey (expires_at);
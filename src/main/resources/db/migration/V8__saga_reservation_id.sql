@@ -0,0 +1,3 @@
+-- Key the saga's stock reservation was made under when it is not the order id: a reservation sent before the
+-- order was inserted (parallel reservation) or the combined reservation of an order batch. Null means the order id.
+alter table App_SagaState add column reservation_id varchar(255);
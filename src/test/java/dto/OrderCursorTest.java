@@ -0,0 +1,61 @@
+package dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import entities.Order;
+import enums.OrderStatus;
+import jakarta.ws.rs.BadRequestException;
+
+class OrderCursorTest {
+
+    private static String encoded(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesWhatItEncodes() {
+        OrderCursor cursor = new OrderCursor(LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000), 42);
+
+        assertEquals(cursor, OrderCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void isUrlSafe() {
+        String encoded = new OrderCursor(LocalDateTime.of(2025, 3, 14, 9, 26), 42).encode();
+
+        assertFalse(encoded.contains("+") || encoded.contains("/") || encoded.contains("="));
+    }
+
+    @Test
+    void pointsAtTheOrder() {
+        LocalDateTime orderDate = LocalDateTime.of(2025, 1, 2, 3, 4);
+        Order order = new Order(5, (BuyerDTO) null, List.of(), OrderStatus.CONFIRMED, orderDate);
+
+        assertEquals(new OrderCursor(orderDate, 5), OrderCursor.of(order));
+    }
+
+    @Test
+    void noCursorMeansTheFirstPage() {
+        assertNull(OrderCursor.decode(null));
+        assertNull(OrderCursor.decode(""));
+        assertNull(OrderCursor.decode("  "));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(BadRequestException.class, () -> OrderCursor.decode("not base64!"));
+        assertThrows(BadRequestException.class, () -> OrderCursor.decode(encoded("2025-01-02T03:04")));
+        assertThrows(BadRequestException.class, () -> OrderCursor.decode(encoded("yesterday|5")));
+        assertThrows(BadRequestException.class, () -> OrderCursor.decode(encoded("2025-01-02T03:04|five")));
+    }
+}
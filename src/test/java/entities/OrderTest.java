@@ -0,0 +1,48 @@
+package entities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import enums.OrderStatus;
+
+class OrderTest {
+
+    private static OrderItem item(String price, int quantity) {
+        return new OrderItem("p", "name", new BigDecimal(price), "", quantity);
+    }
+
+    private static Order persisted(List<OrderItem> items) {
+        Order order = new Order("kc-1", items, OrderStatus.PENDING, LocalDateTime.now());
+        order.computeTotals();
+        return order;
+    }
+
+    @Test
+    void totalIsExactInCents() {
+        // 0.1 * 3 + 0.2 is 0.5000000000000001 in double arithmetic
+        Order order = persisted(List.of(item("0.10", 3), item("0.20", 1)));
+
+        assertEquals(new BigDecimal("0.50"), order.getTotal());
+    }
+
+    @Test
+    void totalIsTheSumOfTheLineTotals() {
+        Order order = persisted(List.of(item("19.99", 2), item("5.01", 1)));
+
+        assertEquals(new BigDecimal("44.99"), order.getTotal());
+        assertEquals(2, order.getItemCount());
+    }
+
+    @Test
+    void orderWithoutItemsTotalsZero() {
+        Order order = persisted(List.of());
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(order.getTotal()));
+        assertEquals(0, order.getItemCount());
+    }
+}
@@ -0,0 +1,46 @@
+package enums;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+
+class OrderStatusTest {
+
+    @Test
+    void allowsOnlyForwardTransitions() {
+        assertEquals(EnumSet.of(OrderStatus.CONFIRMED, OrderStatus.FAILED, OrderStatus.CANCELLED),
+                OrderStatus.PENDING.nextStatuses());
+        assertEquals(EnumSet.of(OrderStatus.SHIPPED, OrderStatus.CANCELLED), OrderStatus.CONFIRMED.nextStatuses());
+        assertEquals(EnumSet.of(OrderStatus.DELIVERED), OrderStatus.SHIPPED.nextStatuses());
+    }
+
+    @Test
+    void terminalStatusesHaveNoNextStatus() {
+        assertTrue(OrderStatus.DELIVERED.isTerminal());
+        assertTrue(OrderStatus.CANCELLED.isTerminal());
+        assertTrue(OrderStatus.FAILED.isTerminal());
+        assertFalse(OrderStatus.PENDING.isTerminal());
+        assertFalse(OrderStatus.CONFIRMED.isTerminal());
+        assertFalse(OrderStatus.SHIPPED.isTerminal());
+    }
+
+    @Test
+    void rejectsSkippingAndGoingBack() {
+        assertFalse(OrderStatus.PENDING.canTransitionTo(OrderStatus.SHIPPED));
+        assertFalse(OrderStatus.SHIPPED.canTransitionTo(OrderStatus.CANCELLED));
+        assertFalse(OrderStatus.CONFIRMED.canTransitionTo(OrderStatus.PENDING));
+        assertFalse(OrderStatus.CONFIRMED.canTransitionTo(OrderStatus.CONFIRMED));
+    }
+
+    @Test
+    void sourcesAreTheStatusesThatMayMoveToTheTarget() {
+        assertEquals(EnumSet.of(OrderStatus.PENDING, OrderStatus.CONFIRMED), OrderStatus.sourcesOf(OrderStatus.CANCELLED));
+        assertEquals(EnumSet.of(OrderStatus.PENDING), OrderStatus.sourcesOf(OrderStatus.FAILED));
+        assertEquals(EnumSet.of(OrderStatus.SHIPPED), OrderStatus.sourcesOf(OrderStatus.DELIVERED));
+        assertTrue(OrderStatus.sourcesOf(OrderStatus.PENDING).isEmpty());
+    }
+}
@@ -0,0 +1,275 @@
+package saga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import dto.BatchOrderOutcome;
+import dto.BuyerDTO;
+import dto.CreateOrderRequest;
+import dto.OrderItemRequest;
+import dto.ReserveStockItem;
+import dto.ResolvedOrder;
+import dto.StockReleased;
+import dto.StockReservationFailed;
+import dto.StockReserved;
+import entities.Order;
+import entities.OrderItem;
+import entities.OutboxMessage;
+import entities.SagaState;
+import enums.OrderStatus;
+import enums.SagaStep;
+import exceptions.errors.DownstreamTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.Vertx;
+import services.OrderService;
+import services.ProductClientService;
+import utils.StageTimer;
+
+class OrderSagaOrchestratorTest {
+
+    private static final String BUYER = "kc-1";
+
+    private OrderService orderService;
+    private ProductClientService productClientService;
+    private SagaLog sagaLog;
+    private SagaAdmission admission;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderService = mock(OrderService.class);
+        productClientService = mock(ProductClientService.class);
+        sagaLog = mock(SagaLog.class);
+        admission = mock(SagaAdmission.class);
+        when(admission.run(any())).thenAnswer(invocation -> ((Supplier<Uni<?>>) invocation.getArgument(0)).get());
+        when(sagaLog.orderFailed(anyInt(), anyList())).thenReturn(Uni.createFrom().voidItem());
+        when(sagaLog.orderFailed(anyInt())).thenReturn(Uni.createFrom().voidItem());
+        when(sagaLog.stepReached(anyInt(), any())).thenReturn(Uni.createFrom().voidItem());
+        when(sagaLog.orderConfirmed(anyInt())).thenReturn(Uni.createFrom().voidItem());
+        when(productClientService.prepareReleaseStock(anyInt(), anyString(), anyList()))
+                .thenAnswer(invocation -> stockCall(Uni.createFrom().item(new StockReleased())));
+        when(productClientService.releaseStock(anyString(), anyList()))
+                .thenReturn(Uni.createFrom().item(new StockReleased()));
+        when(productClientService.releaseStockMessage(anyInt(), anyString(), anyList()))
+                .thenAnswer(invocation -> outboxMessage());
+    }
+
+    private OrderSagaOrchestrator orchestrator(boolean parallelReservation) {
+        return new OrderSagaOrchestrator(orderService, productClientService, sagaLog,
+                new StageTimer(new SimpleMeterRegistry()), admission, mock(Vertx.class), parallelReservation);
+    }
+
+    private static CreateOrderRequest request(String productId, int quantity) {
+        OrderItemRequest item = new OrderItemRequest();
+        item.productId = productId;
+        item.quantity = quantity;
+        return new CreateOrderRequest(List.of(item));
+    }
+
+    private static Order order(int id, String productId, int quantity) {
+        OrderItem item = new OrderItem(productId, productId, BigDecimal.TEN, "", quantity);
+        return new Order(id, (BuyerDTO) null, List.of(item), OrderStatus.PENDING, LocalDateTime.now());
+    }
+
+    private static OutboxMessage outboxMessage() {
+        return new OutboxMessage(ProductClientService.RESERVE_STOCK_CHANNEL, "c", "replies", "{}");
+    }
+
+    private static ProductClientService.StockCall stockCall(Uni<Object> reply) {
+        return new ProductClientService.StockCall(outboxMessage(), reply);
+    }
+
+    private static String itemsOf(List<ReserveStockItem> items) {
+        return items.toString();
+    }
+
+    // The order gets id 7 when it is written; messages built for it are staged with it
+    @SuppressWarnings("unchecked")
+    private void ordersAreCreatedAs(Order created) {
+        when(sagaLog.orderCreated(any(), anyList(), any(), any(), any())).thenAnswer(invocation -> {
+            ((Function<Order, List<OutboxMessage>>) invocation.getArgument(4)).apply(created);
+            return Uni.createFrom().item(created);
+        });
+    }
+
+    private Throwable sagaFailure(OrderSagaOrchestrator orchestrator, CreateOrderRequest request) {
+        return orchestrator.createOrderWithSaga(request, BUYER)
+                .subscribe().withSubscriber(UniAssertSubscriber.create())
+                .awaitFailure().getFailure();
+    }
+
+    @Test
+    void stagedReservationIsReleasedUnderTheOrderId() {
+        CreateOrderRequest request = request("p1", 2);
+        when(orderService.resolvePendingOrder(request, BUYER)).thenReturn(Uni.createFrom().item(order(0, "p1", 2)));
+        ordersAreCreatedAs(order(7, "p1", 2));
+        when(productClientService.prepareReserveStock(eq(7), anyList())).thenReturn(
+                stockCall(Uni.createFrom().failure(new DownstreamTimeoutException("reserve-stock"))));
+
+        sagaFailure(orchestrator(false), request);
+
+        verify(productClientService).prepareReleaseStock(eq(7), eq("7"), anyList());
+    }
+
+    @Test
+    void parallelReservationIsReleasedUnderItsOwnKey() {
+        CreateOrderRequest request = request("p1", 2);
+        when(orderService.resolvePendingOrder(request, BUYER)).thenReturn(Uni.createFrom().item(order(0, "p1", 2)));
+        ordersAreCreatedAs(order(7, "p1", 2));
+        when(productClientService.reserveStock(anyString(), anyList()))
+                .thenReturn(Uni.createFrom().failure(new DownstreamTimeoutException("reserve-stock")));
+
+        sagaFailure(orchestrator(true), request);
+
+        ArgumentCaptor<String> reserved = ArgumentCaptor.forClass(String.class);
+        verify(productClientService).reserveStock(reserved.capture(), anyList());
+        assertTrue(reserved.getValue().startsWith("saga:"));
+        // A timed-out reservation may still have been applied
+        verify(productClientService).prepareReleaseStock(eq(7), eq(reserved.getValue()), anyList());
+        verify(sagaLog).orderCreated(any(), anyList(), eq(reserved.getValue()), eq(SagaStep.RESERVING), any());
+    }
+
+    @Test
+    void parallelReservationWithoutAnOrderIsReleasedUnderItsOwnKey() {
+        CreateOrderRequest request = request("p1", 2);
+        when(orderService.resolvePendingOrder(request, BUYER))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("buyer lookup failed")));
+        when(productClientService.reserveStock(anyString(), anyList()))
+                .thenReturn(Uni.createFrom().item(new StockReserved(List.of())));
+
+        sagaFailure(orchestrator(true), request);
+
+        ArgumentCaptor<String> reserved = ArgumentCaptor.forClass(String.class);
+        verify(productClientService).reserveStock(reserved.capture(), anyList());
+        ArgumentCaptor<List<ReserveStockItem>> released = ArgumentCaptor.captor();
+        verify(productClientService).releaseStock(eq(reserved.getValue()), released.capture());
+        assertEquals(itemsOf(List.of(new ReserveStockItem("p1", 2))), itemsOf(released.getValue()));
+    }
+
+    @Test
+    void refusedParallelReservationIsNotReleased() {
+        CreateOrderRequest request = request("p1", 2);
+        when(orderService.resolvePendingOrder(request, BUYER)).thenReturn(Uni.createFrom().item(order(0, "p1", 2)));
+        ordersAreCreatedAs(order(7, "p1", 2));
+        when(productClientService.reserveStock(anyString(), anyList()))
+                .thenReturn(Uni.createFrom().item(new StockReservationFailed(List.of(), "out of stock")));
+
+        sagaFailure(orchestrator(true), request);
+
+        verify(productClientService, never()).prepareReleaseStock(anyInt(), anyString(), anyList());
+        verify(sagaLog).orderFailed(7, List.of());
+    }
+
+    @Test
+    void recoveryReleasesUnderTheRecordedKey() {
+        SagaState sagaState = new SagaState(7, SagaStep.RESERVING, "[{\"productId\":\"p1\",\"quantity\":2}]", "saga:abc");
+
+        assertEquals(SagaStep.COMPENSATED, orchestrator(true).recover(sagaState).await().indefinitely());
+
+        ArgumentCaptor<List<ReserveStockItem>> released = ArgumentCaptor.captor();
+        verify(productClientService).releaseStockMessage(eq(7), eq("saga:abc"), released.capture());
+        assertEquals(itemsOf(List.of(new ReserveStockItem("p1", 2))), itemsOf(released.getValue()));
+    }
+
+    @Test
+    void recoveryReleasesUnderTheOrderIdWithoutARecordedKey() {
+        SagaState sagaState = new SagaState(7, SagaStep.RESERVING, "[{\"productId\":\"p1\",\"quantity\":2}]");
+
+        orchestrator(false).recover(sagaState).await().indefinitely();
+
+        verify(productClientService).releaseStockMessage(eq(7), eq("7"), anyList());
+    }
+
+    // Orders 7 (2 x p1) and 8 (1 x p1, 3 x p2) of one buyer, written in one transaction
+    @SuppressWarnings("unchecked")
+    private List<Order> batchOf7And8(List<CreateOrderRequest> requests, ArgumentCaptor<Function<Order, String>> keys) {
+        Order first = order(7, "p1", 2);
+        Order second = new Order(8, (BuyerDTO) null, List.of(new OrderItem("p1", "p1", BigDecimal.TEN, "", 1),
+                new OrderItem("p2", "p2", BigDecimal.TEN, "", 3)), OrderStatus.PENDING, LocalDateTime.now());
+        List<Order> orders = List.of(first, second);
+        when(orderService.resolvePendingOrders(requests, BUYER)).thenReturn(Uni.createFrom().item(
+                List.of(new ResolvedOrder(first, null), new ResolvedOrder(second, null))));
+        when(sagaLog.ordersCreated(eq(orders), any(), keys.capture(), any())).thenAnswer(invocation -> {
+            ((Function<List<Order>, List<OutboxMessage>>) invocation.getArgument(3)).apply(orders);
+            return Uni.createFrom().item(orders);
+        });
+        return orders;
+    }
+
+    @Test
+    void refusedBatchReservesEachOrderUnderItsOwnId() {
+        List<CreateOrderRequest> requests = List.of(request("p1", 2), request("p1", 1));
+        ArgumentCaptor<Function<Order, String>> keys = ArgumentCaptor.captor();
+        List<Order> orders = batchOf7And8(requests, keys);
+        when(productClientService.prepareBatchReserveStock(anyString(), eq(List.of(7, 8)), anyList())).thenReturn(
+                stockCall(Uni.createFrom().item(new StockReservationFailed(List.of(), "out of stock"))));
+        when(productClientService.prepareReserveStock(anyInt(), anyList()))
+                .thenAnswer(invocation -> stockCall(Uni.createFrom().item(new StockReserved(List.of()))));
+        when(sagaLog.reservationStaged(anyInt(), any(), anyList(), any())).thenReturn(Uni.createFrom().voidItem());
+
+        List<BatchOrderOutcome> outcomes = orchestrator(false).createOrdersWithSaga(requests, BUYER)
+                .await().indefinitely();
+
+        ArgumentCaptor<String> batchKey = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<ReserveStockItem>> merged = ArgumentCaptor.captor();
+        verify(productClientService).prepareBatchReserveStock(batchKey.capture(), eq(List.of(7, 8)), merged.capture());
+        assertTrue(batchKey.getValue().startsWith("batch:"));
+        assertEquals(itemsOf(List.of(new ReserveStockItem("p1", 3), new ReserveStockItem("p2", 3))),
+                itemsOf(merged.getValue()));
+        // Recovery of the leading order releases the combined reservation until its own one is staged
+        assertEquals(batchKey.getValue(), keys.getValue().apply(orders.get(0)));
+        assertNull(keys.getValue().apply(orders.get(1)));
+
+        verify(productClientService).prepareReserveStock(eq(7), anyList());
+        verify(productClientService).prepareReserveStock(eq(8), anyList());
+        verify(sagaLog).reservationStaged(eq(7), isNull(), anyList(), any());
+        verify(sagaLog).reservationStaged(eq(8), isNull(), anyList(), any());
+        assertEquals(List.of(OrderStatus.CONFIRMED, OrderStatus.CONFIRMED),
+                outcomes.stream().map(outcome -> outcome.status).toList());
+    }
+
+    @Test
+    void failedBatchIsReleasedUnderTheBatchKey() {
+        List<CreateOrderRequest> requests = List.of(request("p1", 2), request("p1", 1));
+        batchOf7And8(requests, ArgumentCaptor.captor());
+        when(productClientService.prepareBatchReserveStock(anyString(), eq(List.of(7, 8)), anyList())).thenReturn(
+                stockCall(Uni.createFrom().failure(new DownstreamTimeoutException("reserve-stock"))));
+
+        List<BatchOrderOutcome> outcomes = orchestrator(false).createOrdersWithSaga(requests, BUYER)
+                .await().indefinitely();
+
+        ArgumentCaptor<String> batchKey = ArgumentCaptor.forClass(String.class);
+        verify(productClientService).prepareBatchReserveStock(batchKey.capture(), anyList(), anyList());
+        // Released once, as a whole, with the leading order
+        verify(productClientService).releaseStockMessage(eq(7), eq(batchKey.getValue()), anyList());
+        verify(productClientService, times(1)).releaseStockMessage(anyInt(), anyString(), anyList());
+        verify(productClientService, never()).prepareReserveStock(anyInt(), anyList());
+        verify(sagaLog).orderFailed(8, List.of());
+        assertEquals(List.of(OrderStatus.FAILED, OrderStatus.FAILED),
+                outcomes.stream().map(outcome -> outcome.status).toList());
+    }
+}
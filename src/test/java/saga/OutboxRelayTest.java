@@ -0,0 +1,178 @@
+package saga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+import org.hibernate.reactive.mutiny.Mutiny;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import entities.OutboxMessage;
+import interfaces.IOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import services.ProductClientService;
+import utils.VertxContexts;
+
+class OutboxRelayTest {
+
+    private Vertx vertx;
+    private IOutboxRepository outboxRepository;
+    private ProductClientService productClientService;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        vertx = Vertx.vertx();
+        outboxRepository = mock(IOutboxRepository.class);
+        productClientService = mock(ProductClientService.class);
+        Mutiny.SessionFactory sessionFactory = mock(Mutiny.SessionFactory.class);
+        when(sessionFactory.withTransaction(any(Function.class))).thenAnswer(
+                invocation -> ((Function<Mutiny.Session, Uni<?>>) invocation.getArgument(0)).apply(null));
+        when(outboxRepository.markPublished(any())).thenAnswer(
+                invocation -> Uni.createFrom().item(((List<Long>) invocation.getArgument(0)).size()));
+        when(productClientService.publish(any())).thenReturn(Uni.createFrom().voidItem());
+        relay = new OutboxRelay(sessionFactory, outboxRepository, productClientService, vertx,
+                new SimpleMeterRegistry(), 200, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private static OutboxMessage message(long id, int orderId) {
+        OutboxMessage message = mock(OutboxMessage.class);
+        when(message.getId()).thenReturn(id);
+        when(message.getAggregateId()).thenReturn(orderId);
+        when(message.getCreatedAt()).thenReturn(LocalDateTime.now());
+        return message;
+    }
+
+    private void unpublished(OutboxMessage... messages) {
+        when(outboxRepository.lockUnpublished(anyInt())).thenReturn(Uni.createFrom().item(List.of(messages)));
+    }
+
+    // The relay runs on its own context, like after a commit
+    private void relay() {
+        VertxContexts.onNewContext(vertx, relay::poll).await().atMost(Duration.ofSeconds(5));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> markedPublished() {
+        ArgumentCaptor<List<Long>> ids = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository).markPublished(ids.capture());
+        return ids.getValue().stream().sorted().toList();
+    }
+
+    @Test
+    void marksTheConfirmedMessagesPublished() {
+        OutboxMessage first = message(1, 7);
+        OutboxMessage second = message(2, 8);
+        unpublished(first, second);
+
+        relay();
+
+        verify(productClientService).publish(first);
+        verify(productClientService).publish(second);
+        assertEquals(List.of(1L, 2L), markedPublished());
+    }
+
+    @Test
+    void stopsAnOrdersSequenceAtTheFirstUnconfirmedMessage() {
+        OutboxMessage reservation = message(1, 7);
+        OutboxMessage release = message(2, 7);
+        OutboxMessage later = message(3, 7);
+        OutboxMessage otherOrder = message(4, 8);
+        unpublished(reservation, release, later, otherOrder);
+        when(productClientService.publish(release))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("nacked")));
+
+        relay();
+
+        verify(productClientService, never()).publish(later);
+        // Left unpublished for the next run, which sends them in the same order
+        assertEquals(List.of(1L, 4L), markedPublished());
+    }
+
+    private void mergeable(OutboxMessage... messages) {
+        for (OutboxMessage message : messages) {
+            when(productClientService.isMergeableReservation(message)).thenReturn(true);
+        }
+    }
+
+    @Test
+    void mergesReservationsOfDifferentOrders() {
+        OutboxMessage first = message(1, 7);
+        OutboxMessage second = message(2, 8);
+        OutboxMessage release = message(3, 9);
+        unpublished(first, second, release);
+        mergeable(first, second);
+        when(productClientService.publishMergedReservations(List.of(first, second)))
+                .thenReturn(Uni.createFrom().voidItem());
+
+        relay();
+
+        verify(productClientService).publishMergedReservations(List.of(first, second));
+        verify(productClientService, never()).publish(first);
+        verify(productClientService).publish(release);
+        assertEquals(List.of(1L, 2L, 3L), markedPublished());
+    }
+
+    @Test
+    void publishesASingleReservationOnItsOwn() {
+        OutboxMessage reservation = message(1, 7);
+        unpublished(reservation);
+        mergeable(reservation);
+
+        relay();
+
+        verify(productClientService, never()).publishMergedReservations(any());
+        verify(productClientService).publish(reservation);
+    }
+
+    @Test
+    void keepsTheSequenceOfAnOrderWithMoreThanOneMessage() {
+        OutboxMessage reservation = message(1, 7);
+        OutboxMessage release = message(2, 7);
+        OutboxMessage other = message(3, 8);
+        unpublished(reservation, release, other);
+        mergeable(reservation, other);
+
+        relay();
+
+        verify(productClientService, never()).publishMergedReservations(any());
+        verify(productClientService).publish(reservation);
+        verify(productClientService).publish(release);
+        verify(productClientService).publish(other);
+    }
+
+    @Test
+    void leavesAnUnconfirmedMergeToTheNextRun() {
+        OutboxMessage first = message(1, 7);
+        OutboxMessage second = message(2, 8);
+        OutboxMessage release = message(3, 9);
+        unpublished(first, second, release);
+        mergeable(first, second);
+        when(productClientService.publishMergedReservations(List.of(first, second)))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("nacked")));
+
+        relay();
+
+        assertEquals(List.of(3L), markedPublished());
+    }
+}
@@ -0,0 +1,123 @@
+package saga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import entities.SagaState;
+import enums.SagaStep;
+import interfaces.ISagaStateRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+
+class SagaRecoveryWorkerTest {
+
+    private static final Duration STALE_AFTER = Duration.ofMinutes(2);
+
+    private ISagaStateRepository repository;
+    private OrderSagaOrchestrator orchestrator;
+    private Vertx vertx;
+    private MeterRegistry registry;
+    private SagaRecoveryWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ISagaStateRepository.class);
+        orchestrator = mock(OrderSagaOrchestrator.class);
+        vertx = Vertx.vertx();
+        registry = new SimpleMeterRegistry();
+        worker = new SagaRecoveryWorker(repository, orchestrator, vertx, registry, STALE_AFTER, 100, 8, 5);
+        when(repository.countIncomplete()).thenReturn(Uni.createFrom().item(2L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private void staleSagas(SagaState... sagaStates) {
+        when(repository.findStale(any(), anyInt(), anyInt())).thenReturn(Uni.createFrom().item(List.of(sagaStates)));
+    }
+
+    private void run() {
+        worker.recoverStaleSagas().await().atMost(Duration.ofSeconds(5));
+    }
+
+    private double recovered(String outcome) {
+        return registry.get("amazoff.saga.recovery.recovered").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void looksForSagasStaleLongerThanTheThreshold() {
+        staleSagas();
+        LocalDateTime before = LocalDateTime.now();
+
+        run();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).findStale(cutoff.capture(), eq(5), eq(100));
+        assertTrue(!cutoff.getValue().isBefore(before.minus(STALE_AFTER))
+                && !cutoff.getValue().isAfter(LocalDateTime.now().minus(STALE_AFTER)));
+        assertEquals(2, registry.get("amazoff.saga.recovery.backlog").gauge().value());
+    }
+
+    @Test
+    void recoversOnlySagasItClaimed() {
+        SagaState claimed = new SagaState(7, SagaStep.RESERVING, "[]");
+        SagaState takenByAnotherPod = new SagaState(8, SagaStep.RESERVING, "[]");
+        staleSagas(claimed, takenByAnotherPod);
+        // The claim only succeeds while the saga still has the updatedAt this run read
+        when(repository.claim(7, claimed.getUpdatedAt())).thenReturn(Uni.createFrom().item(true));
+        when(repository.claim(8, takenByAnotherPod.getUpdatedAt())).thenReturn(Uni.createFrom().item(false));
+        when(orchestrator.recover(claimed)).thenReturn(Uni.createFrom().item(SagaStep.COMPENSATED));
+
+        run();
+
+        verify(orchestrator).recover(claimed);
+        verify(orchestrator, never()).recover(takenByAnotherPod);
+        assertEquals(1, recovered("compensated"));
+        assertEquals(1, recovered("skipped"));
+    }
+
+    @Test
+    void aFailedRecoveryDoesNotStopTheOthers() {
+        SagaState failing = new SagaState(7, SagaStep.RESERVED, "[]");
+        SagaState other = new SagaState(8, SagaStep.RESERVED, "[]");
+        staleSagas(failing, other);
+        when(repository.claim(anyInt(), any())).thenReturn(Uni.createFrom().item(true));
+        when(orchestrator.recover(failing)).thenReturn(Uni.createFrom().failure(new IllegalStateException("db down")));
+        when(orchestrator.recover(other)).thenReturn(Uni.createFrom().item(SagaStep.CONFIRMED));
+
+        run();
+
+        assertEquals(1, recovered("failed"));
+        assertEquals(1, recovered("confirmed"));
+    }
+
+    @Test
+    void aFailedRunIsRetriedOnTheNextInterval() {
+        when(repository.findStale(any(), anyInt(), anyInt()))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("db down")));
+
+        run();
+
+        verify(orchestrator, never()).recover(any());
+    }
+}
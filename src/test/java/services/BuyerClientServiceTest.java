@@ -0,0 +1,122 @@
+package services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dto.BuyerDTO;
+import exceptions.errors.BuyerNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.json.JsonObject;
+import utils.DependencyGuards;
+
+class BuyerClientServiceTest {
+
+    private Emitter<JsonObject> emitter;
+    private BuyerClientService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        emitter = mock(Emitter.class);
+        service = new BuyerClientService();
+        service.requestEmitter = emitter;
+        service.registry = new SimpleMeterRegistry();
+        service.dependencyGuards = mock(DependencyGuards.class);
+        service.timeout = Duration.ofSeconds(3);
+        service.cacheMaxSize = 100;
+        service.cacheTtl = Duration.ofMinutes(10);
+        service.cacheRefreshAfter = Duration.ofMinutes(1);
+        service.init();
+    }
+
+    private UniAssertSubscriber<BuyerDTO> fetch(String keycloakId) {
+        return service.fetchBuyer(keycloakId).subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private void reply(JsonObject body) {
+        service.onBuyerResponse(Message.of(body)).await().atMost(Duration.ofSeconds(5));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void verifySent(int requests) {
+        verify(emitter, times(requests)).send(any(Message.class));
+    }
+
+    @Test
+    void concurrentLookupsShareOneRequest() {
+        UniAssertSubscriber<BuyerDTO> first = fetch("kc-1");
+        UniAssertSubscriber<BuyerDTO> second = fetch("kc-1");
+        verifySent(1);
+
+        reply(new JsonObject().put("keycloak_id", "kc-1").put("email", "buyer@example.com"));
+
+        assertEquals("buyer@example.com", first.awaitItem().getItem().email);
+        assertEquals("buyer@example.com", second.awaitItem().getItem().email);
+        assertEquals(1, service.registry.get("amazoff.rpc.coalesced").tag("operation", "get-buyer").counter().count());
+    }
+
+    @Test
+    void differentBuyersAreNotCoalesced() {
+        fetch("kc-1");
+        fetch("kc-2");
+
+        verifySent(2);
+    }
+
+    @Test
+    void lookupAfterTheReplySendsANewRequest() {
+        UniAssertSubscriber<BuyerDTO> first = fetch("kc-1");
+        reply(new JsonObject().put("keycloak_id", "kc-1"));
+        first.awaitItem();
+
+        fetch("kc-1");
+
+        verifySent(2);
+    }
+
+    @Test
+    void errorReplyFailsEveryJoinedCaller() {
+        UniAssertSubscriber<BuyerDTO> first = fetch("kc-1");
+        UniAssertSubscriber<BuyerDTO> second = fetch("kc-1");
+
+        reply(new JsonObject().put("keycloakId", "kc-1").put("error", true).put("message", "not found"));
+
+        assertInstanceOf(BuyerNotFoundException.class, first.awaitFailure().getFailure());
+        assertInstanceOf(BuyerNotFoundException.class, second.awaitFailure().getFailure());
+    }
+
+    @Test
+    void cancelledCallerDoesNotCancelTheSharedRequest() {
+        UniAssertSubscriber<BuyerDTO> first = fetch("kc-1");
+        UniAssertSubscriber<BuyerDTO> second = fetch("kc-1");
+
+        first.cancel();
+        reply(new JsonObject().put("keycloak_id", "kc-1"));
+
+        assertEquals("kc-1", second.awaitItem().getItem().keycloakId);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendFailureFailsTheLookupAndFreesTheKey() {
+        doThrow(new IllegalStateException("channel closed")).when(emitter).send(any(Message.class));
+
+        assertInstanceOf(IllegalStateException.class, fetch("kc-1").awaitFailure().getFailure());
+        fetch("kc-1");
+
+        verifySent(2);
+    }
+}
@@ -0,0 +1,244 @@
+package services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import dto.BuyerDTO;
+import dto.CreateOrderRequest;
+import dto.OrderItemRequest;
+import entities.IdempotencyRecord;
+import entities.Order;
+import enums.IdempotencyStatus;
+import enums.OrderStatus;
+import exceptions.errors.IdempotencyKeyInProgressException;
+import exceptions.errors.IdempotencyKeyMismatchException;
+import interfaces.IIdempotencyRepository;
+import interfaces.IOrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.Vertx;
+
+class IdempotencyServiceTest {
+
+    private static final String USER = "kc-1";
+    private static final String KEY = "key-1";
+
+    private IIdempotencyRepository repository;
+    private IOrderService orderService;
+    private Vertx vertx;
+    private MeterRegistry registry;
+    private final AtomicInteger creations = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(IIdempotencyRepository.class);
+        orderService = mock(IOrderService.class);
+        vertx = Vertx.vertx();
+        registry = new SimpleMeterRegistry();
+        when(repository.complete(anyString(), anyString(), any(Integer.class), any())).thenReturn(Uni.createFrom().voidItem());
+        when(repository.release(anyString(), anyString())).thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private IdempotencyService service(Duration wait) {
+        return new IdempotencyService(repository, orderService, vertx, registry, Duration.ofHours(24),
+                Duration.ofMinutes(1), wait, Duration.ofMillis(10));
+    }
+
+    private static CreateOrderRequest request(int quantity) {
+        OrderItemRequest item = new OrderItemRequest();
+        item.productId = "p1";
+        item.quantity = quantity;
+        return new CreateOrderRequest(List.of(item));
+    }
+
+    private static Order order(int id) {
+        return new Order(id, (BuyerDTO) null, List.of(), OrderStatus.CONFIRMED, LocalDateTime.now());
+    }
+
+    private Uni<Order> create(Order order) {
+        creations.incrementAndGet();
+        return Uni.createFrom().item(order);
+    }
+
+    private void claims(boolean claimed) {
+        when(repository.claim(eq(USER), eq(KEY), anyString(), any())).thenReturn(Uni.createFrom().item(claimed));
+    }
+
+    // The hash the service stores for a request, as seen by the repository on the first claim
+    private String hashOf(CreateOrderRequest request) {
+        IIdempotencyRepository probe = mock(IIdempotencyRepository.class);
+        when(probe.claim(anyString(), anyString(), anyString(), any())).thenReturn(Uni.createFrom().item(false));
+        when(probe.find(anyString(), anyString())).thenReturn(Uni.createFrom().nullItem());
+        new IdempotencyService(probe, orderService, vertx, registry, Duration.ofHours(24), Duration.ofMinutes(1),
+                Duration.ZERO, Duration.ofMillis(10))
+                .createOnce(USER, KEY, request, () -> create(order(0)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure();
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        verify(probe).claim(anyString(), anyString(), hash.capture(), any());
+        return hash.getValue();
+    }
+
+    private static IdempotencyRecord record(String requestHash, IdempotencyStatus status, Integer orderId) {
+        IdempotencyRecord record = mock(IdempotencyRecord.class);
+        when(record.getRequestHash()).thenReturn(requestHash);
+        when(record.getStatus()).thenReturn(status);
+        when(record.getOrderId()).thenReturn(orderId);
+        when(record.getExpiresAt()).thenReturn(LocalDateTime.now().plusMinutes(1));
+        return record;
+    }
+
+    private double outcomes(String outcome) {
+        return registry.get("amazoff.idempotency.requests").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void runsAClaimedRequestAndCompletesTheKey() {
+        claims(true);
+
+        Order created = service(Duration.ofSeconds(1)).createOnce(USER, KEY, request(1), () -> create(order(7)))
+                .await().indefinitely();
+
+        assertEquals(7, created.getId());
+        verify(repository).complete(eq(USER), eq(KEY), eq(7), any());
+        verify(repository, never()).release(anyString(), anyString());
+    }
+
+    @Test
+    void releasesTheKeyWhenTheRequestFails() {
+        claims(true);
+
+        Throwable failure = service(Duration.ofSeconds(1))
+                .createOnce(USER, KEY, request(1), () -> Uni.createFrom().failure(new IllegalStateException("out of stock")))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure().getFailure();
+
+        assertInstanceOf(IllegalStateException.class, failure);
+        verify(repository).release(USER, KEY);
+    }
+
+    @Test
+    void replaysTheOrderOfACompletedKey() {
+        CreateOrderRequest request = request(1);
+        String hash = hashOf(request);
+        claims(false);
+        IdempotencyRecord completed = record(hash, IdempotencyStatus.COMPLETED, 7);
+        when(repository.find(USER, KEY)).thenReturn(Uni.createFrom().item(completed));
+        Order original = order(7);
+        when(orderService.read(7)).thenReturn(Uni.createFrom().item(original));
+
+        Order replayed = service(Duration.ofSeconds(1)).createOnce(USER, KEY, request, () -> create(order(8)))
+                .await().indefinitely();
+
+        assertSame(original, replayed);
+        assertEquals(0, creations.get());
+        assertEquals(1, outcomes("replayed"));
+    }
+
+    @Test
+    void rejectsAKeyReusedForADifferentRequest() {
+        String hash = hashOf(request(1));
+        claims(false);
+        IdempotencyRecord completed = record(hash, IdempotencyStatus.COMPLETED, 7);
+        when(repository.find(USER, KEY)).thenReturn(Uni.createFrom().item(completed));
+
+        Throwable failure = service(Duration.ofSeconds(1)).createOnce(USER, KEY, request(2), () -> create(order(8)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure().getFailure();
+
+        assertInstanceOf(IdempotencyKeyMismatchException.class, failure);
+        assertEquals(0, creations.get());
+    }
+
+    @Test
+    void pollsARunningKeyUntilItCompletes() {
+        CreateOrderRequest request = request(1);
+        String hash = hashOf(request);
+        claims(false);
+        IdempotencyRecord running = record(hash, IdempotencyStatus.IN_PROGRESS, null);
+        IdempotencyRecord completed = record(hash, IdempotencyStatus.COMPLETED, 7);
+        when(repository.find(USER, KEY)).thenReturn(Uni.createFrom().item(running), Uni.createFrom().item(completed));
+        when(orderService.read(7)).thenReturn(Uni.createFrom().item(order(7)));
+
+        Order replayed = service(Duration.ofSeconds(5)).createOnce(USER, KEY, request, () -> create(order(8)))
+                .await().atMost(Duration.ofSeconds(5));
+
+        assertEquals(7, replayed.getId());
+        verify(repository, times(2)).find(USER, KEY);
+    }
+
+    @Test
+    void givesUpOnAKeyThatStaysInProgress() {
+        CreateOrderRequest request = request(1);
+        String hash = hashOf(request);
+        claims(false);
+        IdempotencyRecord running = record(hash, IdempotencyStatus.IN_PROGRESS, null);
+        when(repository.find(USER, KEY)).thenReturn(Uni.createFrom().item(running));
+
+        Throwable failure = service(Duration.ofMillis(50)).createOnce(USER, KEY, request, () -> create(order(8)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure(Duration.ofSeconds(5)).getFailure();
+
+        assertInstanceOf(IdempotencyKeyInProgressException.class, failure);
+        assertEquals(1, outcomes("in-progress"));
+    }
+
+    @Test
+    void aKeyReleasedSinceTheClaimIsStillInProgress() {
+        claims(false);
+        when(repository.find(USER, KEY)).thenReturn(Uni.createFrom().nullItem());
+
+        Throwable failure = service(Duration.ofSeconds(1)).createOnce(USER, KEY, request(1), () -> create(order(8)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure().getFailure();
+
+        assertInstanceOf(IdempotencyKeyInProgressException.class, failure);
+    }
+
+    @Test
+    void retriesOnThisPodJoinTheRunningRequest() {
+        claims(true);
+        CompletableFuture<Order> result = new CompletableFuture<>();
+        IdempotencyService service = service(Duration.ofSeconds(5));
+
+        UniAssertSubscriber<Order> first = service
+                .createOnce(USER, KEY, request(1), () -> {
+                    creations.incrementAndGet();
+                    return Uni.createFrom().completionStage(result);
+                })
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+        UniAssertSubscriber<Order> retry = service.createOnce(USER, KEY, request(1), () -> create(order(8)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+        Throwable mismatch = service.createOnce(USER, KEY, request(2), () -> create(order(9)))
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure().getFailure();
+        result.complete(order(7));
+
+        assertEquals(7, first.awaitItem().getItem().getId());
+        assertEquals(7, retry.awaitItem().getItem().getId());
+        assertInstanceOf(IdempotencyKeyMismatchException.class, mismatch);
+        assertEquals(1, creations.get());
+        verify(repository, times(1)).claim(eq(USER), eq(KEY), anyString(), any());
+    }
+}
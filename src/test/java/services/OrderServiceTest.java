@@ -0,0 +1,82 @@
+package services;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dto.UpdateOrderStatusRequest;
+import enums.OrderStatus;
+import exceptions.errors.IllegalStatusTransitionException;
+import exceptions.errors.OrderNotFoundException;
+import interfaces.IOrderRepository;
+import interfaces.IOrderSummaryRepository;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import utils.StageTimer;
+
+class OrderServiceTest {
+
+    private IOrderRepository orderRepository;
+    private OrderService service;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(IOrderRepository.class);
+        service = new OrderService(orderRepository, mock(IOrderSummaryRepository.class),
+                mock(BuyerClientService.class), mock(ProductClientService.class), mock(StageTimer.class));
+    }
+
+    private Throwable updateFailure(OrderStatus target) {
+        return service.updateOrderStatus(new UpdateOrderStatusRequest(7, target))
+                .subscribe().withSubscriber(UniAssertSubscriber.create())
+                .awaitFailure().getFailure();
+    }
+
+    @Test
+    void updatesOnlyFromTheSourcesOfTheTarget() {
+        when(orderRepository.updateStatus(7, OrderStatus.sourcesOf(OrderStatus.SHIPPED), OrderStatus.SHIPPED))
+                .thenReturn(Uni.createFrom().item(1));
+
+        service.updateOrderStatus(new UpdateOrderStatusRequest(7, OrderStatus.SHIPPED)).await().indefinitely();
+
+        verify(orderRepository).updateStatus(7, EnumSet.of(OrderStatus.CONFIRMED), OrderStatus.SHIPPED);
+        verify(orderRepository, never()).readStatus(anyInt());
+    }
+
+    @Test
+    void rejectsATransitionTheCurrentStatusDoesNotAllow() {
+        when(orderRepository.updateStatus(anyInt(), anyCollection(), any(OrderStatus.class)))
+                .thenReturn(Uni.createFrom().item(0));
+        when(orderRepository.readStatus(7)).thenReturn(Uni.createFrom().item(OrderStatus.DELIVERED));
+
+        assertInstanceOf(IllegalStatusTransitionException.class, updateFailure(OrderStatus.CANCELLED));
+    }
+
+    @Test
+    void reportsAMissingOrderAsNotFound() {
+        when(orderRepository.updateStatus(anyInt(), anyCollection(), any(OrderStatus.class)))
+                .thenReturn(Uni.createFrom().item(0));
+        when(orderRepository.readStatus(7)).thenReturn(Uni.createFrom().nullItem());
+
+        assertInstanceOf(OrderNotFoundException.class, updateFailure(OrderStatus.CANCELLED));
+    }
+
+    @Test
+    void aTargetWithNoSourcesIsNeverApplied() {
+        when(orderRepository.updateStatus(7, EnumSet.noneOf(OrderStatus.class), OrderStatus.PENDING))
+                .thenReturn(Uni.createFrom().item(0));
+        when(orderRepository.readStatus(7)).thenReturn(Uni.createFrom().item(OrderStatus.CONFIRMED));
+
+        assertInstanceOf(IllegalStatusTransitionException.class, updateFailure(OrderStatus.PENDING));
+    }
+}
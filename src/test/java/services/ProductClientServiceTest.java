@@ -0,0 +1,330 @@
+package services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.microprofile.reactive.messaging.Emitter;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+
+import dto.ProductDTO;
+import dto.ReserveStockItem;
+import dto.StockReservationFailed;
+import dto.StockReserved;
+import entities.OutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.vertx.runtime.jackson.QuarkusJacksonJsonCodec;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import utils.DependencyGuard;
+import utils.DependencyGuards;
+
+class ProductClientServiceTest {
+
+    private static final List<ReserveStockItem> ITEMS = List.of(new ReserveStockItem("p1", 2));
+
+    private Vertx vertx;
+    private Emitter<JsonObject> reserveEmitter;
+    private Emitter<JsonObject> productsEmitter;
+    private ProductClientService service;
+    private final List<Message<JsonObject>> sent = new CopyOnWriteArrayList<>();
+    private volatile boolean brokerConfirms = true;
+
+    // Outside Quarkus the codec gets a plain ObjectMapper; the one Quarkus provides reads the reply DTOs through
+    // their constructors and ignores fields they do not have
+    @BeforeAll
+    static void configureMapperLikeQuarkus() {
+        QuarkusJacksonJsonCodec.mapper()
+                .registerModule(new ParameterNamesModule())
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        vertx = Vertx.vertx();
+        reserveEmitter = mock(Emitter.class);
+        service = new ProductClientService();
+        service.registry = new SimpleMeterRegistry();
+        service.vertx = vertx;
+        service.dependencyGuards = mock(DependencyGuards.class);
+        when(service.dependencyGuards.create(anyString(), anyString())).thenAnswer(invocation -> new DependencyGuard(
+                invocation.getArgument(0), invocation.getArgument(1), 100, 20, 10, 0.5, Duration.ofSeconds(10), 3,
+                e -> true, service.registry));
+        service.productsTimeout = Duration.ofSeconds(3);
+        service.reserveTimeout = Duration.ofSeconds(5);
+        service.releaseTimeout = Duration.ofSeconds(5);
+        service.productCacheMaxSize = 100;
+        service.productMaxStaleness = Duration.ofMinutes(5);
+        service.batchWindow = Duration.ofMillis(5);
+        service.batchMaxSize = 50;
+        service.reserveBatchWindow = Duration.ofMillis(5);
+        service.reserveBatchMaxSize = 50;
+        doAnswer(invocation -> {
+            Message<JsonObject> message = invocation.getArgument(0);
+            sent.add(message);
+            if (brokerConfirms) {
+                message.ack();
+            } else {
+                message.nack(new IllegalStateException("broker down"));
+            }
+            return null;
+        }).when(reserveEmitter).send(any(Message.class));
+        service.reserveStockEmitter = reserveEmitter;
+        service.releaseStockEmitter = mock(Emitter.class);
+        productsEmitter = mock(Emitter.class);
+        service.productRequestEmitter = productsEmitter;
+        service.reserveReplyTo = "reserve-stock-responses";
+        service.releaseReplyTo = "release-stock-responses";
+        service.productsReplyTo = "get-products-responses";
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private static JsonObject payload(OutboxMessage message) {
+        return new JsonObject(message.getPayload());
+    }
+
+    private void reply(JsonObject request, JsonObject body) {
+        service.onReserveStockResponse(Message.of(body.put("correlationId", request.getString("correlationId"))))
+                .await().atMost(Duration.ofSeconds(5));
+    }
+
+    private static JsonObject reserved() {
+        return new JsonObject().put("status", "StockReserved").put("items", new JsonArray());
+    }
+
+    private static JsonObject refused() {
+        return new JsonObject().put("status", "StockReservationFailed").put("items", new JsonArray())
+                .put("reason", "out of stock");
+    }
+
+    private JsonObject sent(int index) {
+        return sent.get(index).getPayload();
+    }
+
+    private static UniAssertSubscriber<Object> await(ProductClientService.StockCall call) {
+        return call.reply().subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private static JsonArray items(String... productIdsAndQuantities) {
+        JsonArray items = new JsonArray();
+        for (int i = 0; i < productIdsAndQuantities.length; i += 2) {
+            items.add(new JsonObject().put("productId", productIdsAndQuantities[i])
+                    .put("quantity", Integer.parseInt(productIdsAndQuantities[i + 1])));
+        }
+        return items;
+    }
+
+    @Test
+    void orderReservationIsKeyedByTheOrderId() {
+        OutboxMessage message = service.prepareReserveStock(7, ITEMS).message();
+
+        assertEquals("7", payload(message).getString("reservationId"));
+        assertEquals(7, payload(message).getInteger("orderId"));
+        assertEquals(7, message.getAggregateId());
+    }
+
+    @Test
+    void batchReservationHasItsOwnKeyAndNoOrderId() {
+        OutboxMessage message = service.prepareBatchReserveStock("batch:1", List.of(7, 8), ITEMS).message();
+
+        JsonObject payload = payload(message);
+        assertEquals("batch:1", payload.getString("reservationId"));
+        assertEquals(new JsonArray(List.of(7, 8)), payload.getJsonArray("orderIds"));
+        assertFalse(payload.containsKey("orderId"));
+        assertEquals(ProductClientService.RESERVE_STOCK_CHANNEL, message.getChannel());
+        // Orders the batch release after it
+        assertEquals(7, message.getAggregateId());
+    }
+
+    @Test
+    void batchReservationIsNotMergedByTheRelay() {
+        service.reserveBatchingEnabled = true;
+
+        OutboxMessage message = service.prepareBatchReserveStock("batch:1", List.of(7, 8), ITEMS).message();
+
+        assertFalse(service.isMergeableReservation(message));
+    }
+
+    @Test
+    void releaseUnderAnotherKeyDoesNotNameTheOrder() {
+        OutboxMessage release = service.prepareReleaseStock(7, "batch:1", ITEMS).message();
+
+        assertEquals("batch:1", payload(release).getString("reservationId"));
+        assertFalse(payload(release).containsKey("orderId"));
+        assertEquals(ProductClientService.RELEASE_STOCK_CHANNEL, release.getChannel());
+        // Still ordered after the reservation of the order that recorded it
+        assertEquals(7, release.getAggregateId());
+    }
+
+    @Test
+    void releaseOfTheOrdersOwnReservationNamesTheOrder() {
+        OutboxMessage release = service.releaseStockMessage(7, ITEMS);
+
+        assertEquals("7", payload(release).getString("reservationId"));
+        assertEquals(7, payload(release).getInteger("orderId"));
+    }
+
+    private List<ProductClientService.StockCall> stageTwoReservations() {
+        service.reserveBatchingEnabled = true;
+        ProductClientService.StockCall first = service.prepareReserveStock(7, ITEMS);
+        ProductClientService.StockCall second = service.prepareReserveStock(8,
+                List.of(new ReserveStockItem("p1", 1), new ReserveStockItem("p2", 3)));
+        assertTrue(service.isMergeableReservation(first.message()));
+        return List.of(first, second);
+    }
+
+    @Test
+    void mergedReservationHasItsOwnKeyAndNoOrderId() {
+        List<ProductClientService.StockCall> staged = stageTwoReservations();
+
+        service.publishMergedReservations(staged.stream().map(ProductClientService.StockCall::message).toList())
+                .await().atMost(Duration.ofSeconds(5));
+
+        JsonObject merged = sent(0);
+        assertTrue(merged.getString("reservationId").startsWith("batch:"));
+        assertFalse(merged.containsKey("orderId"));
+        assertEquals(new JsonArray(List.of(7, 8)), merged.getJsonArray("orderIds"));
+        assertEquals(items("p1", "3", "p2", "3"), merged.getJsonArray("items"));
+        JsonArray reservations = merged.getJsonArray("reservations");
+        assertEquals("7", reservations.getJsonObject(0).getString("reservationId"));
+        assertEquals(items("p1", "2"), reservations.getJsonObject(0).getJsonArray("items"));
+        assertEquals("8", reservations.getJsonObject(1).getString("reservationId"));
+    }
+
+    @Test
+    void mergedReservationGivesEverySagaItsOwnItems() {
+        List<ProductClientService.StockCall> staged = stageTwoReservations();
+        UniAssertSubscriber<Object> first = await(staged.get(0));
+        UniAssertSubscriber<Object> second = await(staged.get(1));
+        service.publishMergedReservations(staged.stream().map(ProductClientService.StockCall::message).toList())
+                .await().atMost(Duration.ofSeconds(5));
+
+        reply(sent(0), reserved());
+
+        StockReserved firstReserved = (StockReserved) first.awaitItem().getItem();
+        StockReserved secondReserved = (StockReserved) second.awaitItem().getItem();
+        assertEquals(ITEMS.toString(), firstReserved.items.toString());
+        assertEquals(List.of(new ReserveStockItem("p1", 1), new ReserveStockItem("p2", 3)).toString(),
+                secondReserved.items.toString());
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void refusedMergeIsSentAgainAsTheStagedReservationsInStagingOrder() {
+        List<ProductClientService.StockCall> staged = stageTwoReservations();
+        UniAssertSubscriber<Object> first = await(staged.get(0));
+        UniAssertSubscriber<Object> second = await(staged.get(1));
+        service.publishMergedReservations(staged.stream().map(ProductClientService.StockCall::message).toList())
+                .await().atMost(Duration.ofSeconds(5));
+
+        reply(sent(0), refused());
+        assertEquals(2, sent.size());
+        assertEquals("7", sent(1).getString("reservationId"));
+        assertEquals(7, sent(1).getInteger("orderId"));
+
+        // The next one is only sent once the earlier saga got its answer
+        reply(sent(1), reserved());
+        assertEquals(3, sent.size());
+        assertEquals("8", sent(2).getString("reservationId"));
+        reply(sent(2), refused());
+
+        assertInstanceOf(StockReserved.class, first.awaitItem().getItem());
+        assertInstanceOf(StockReservationFailed.class, second.awaitItem().getItem());
+    }
+
+    @Test
+    void unconfirmedMergeLeavesTheReservationsToTheNextRelayRun() {
+        List<ProductClientService.StockCall> staged = stageTwoReservations();
+        brokerConfirms = false;
+
+        service.publishMergedReservations(staged.stream().map(ProductClientService.StockCall::message).toList())
+                .subscribe().withSubscriber(UniAssertSubscriber.create()).awaitFailure();
+
+        assertTrue(service.isMergeableReservation(staged.get(0).message()));
+        assertTrue(service.isMergeableReservation(staged.get(1).message()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<JsonObject> productRequestsWithBatching() {
+        List<JsonObject> requests = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            requests.add(invocation.<Message<JsonObject>>getArgument(0).getPayload());
+            return null;
+        }).when(productsEmitter).send(any(Message.class));
+        service.batchingEnabled = true;
+        service.batchWindow = Duration.ofHours(1);
+        service.batchMaxSize = 4;
+        // Again, now that the batcher is enabled; the lookups only flush on max-size
+        service.init();
+        return requests;
+    }
+
+    private static JsonObject product(String id) {
+        return new JsonObject().put("product_id", id).put("name", id).put("price", 10);
+    }
+
+    private static UniAssertSubscriber<List<ProductDTO>> lookup(ProductClientService service, String... ids) {
+        return service.getProductsByIds(List.of(ids)).subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private static List<String> idsOf(UniAssertSubscriber<List<ProductDTO>> lookup) {
+        return lookup.awaitItem().getItem().stream().map(product -> product.id).toList();
+    }
+
+    @Test
+    void batchedLookupsShareOneRequestAndGetTheirOwnProducts() {
+        List<JsonObject> requests = productRequestsWithBatching();
+
+        UniAssertSubscriber<List<ProductDTO>> first = lookup(service, "p1", "p2");
+        UniAssertSubscriber<List<ProductDTO>> second = lookup(service, "p2", "p3");
+
+        assertEquals(1, requests.size());
+        assertEquals(new JsonArray(List.of("p1", "p2", "p3")), requests.get(0).getJsonArray("productIds"));
+        service.onProductsResponse(Message.of(new JsonObject()
+                        .put("correlationId", requests.get(0).getString("correlationId"))
+                        .put("products", new JsonArray().add(product("p3")).add(product("p1")).add(product("p2")))))
+                .await().atMost(Duration.ofSeconds(5));
+
+        assertEquals(List.of("p1", "p2"), idsOf(first));
+        assertEquals(List.of("p2", "p3"), idsOf(second));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedBatchFailsEveryLookupInIt() {
+        productRequestsWithBatching();
+        doThrow(new IllegalStateException("channel closed")).when(productsEmitter).send(any(Message.class));
+
+        UniAssertSubscriber<List<ProductDTO>> first = lookup(service, "p1", "p2");
+        UniAssertSubscriber<List<ProductDTO>> second = lookup(service, "p3", "p4");
+
+        assertInstanceOf(IllegalStateException.class, first.awaitFailure().getFailure());
+        assertInstanceOf(IllegalStateException.class, second.awaitFailure().getFailure());
+    }
+}
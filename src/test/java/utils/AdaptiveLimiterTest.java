@@ -0,0 +1,182 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.Vertx;
+
+class AdaptiveLimiterTest {
+
+    private static final Duration NO_QUEUE_TIMEOUT = Duration.ofHours(1);
+    private static final Duration NEVER_SLOW = Duration.ofHours(1);
+
+    private Vertx vertx;
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private AdaptiveLimiter limiter(int initialLimit, int queueSize, Duration queueTimeout, Duration latencyTarget) {
+        return new AdaptiveLimiter("test", vertx, initialLimit, 1, 10, queueSize, queueTimeout, latencyTarget, 0.5,
+                e -> e instanceof TimeoutException, reason -> new IllegalStateException(reason.name()), registry);
+    }
+
+    private static AdaptiveLimiter.Permit admit(AdaptiveLimiter limiter) {
+        return limiter.acquire().await().indefinitely();
+    }
+
+    private static UniAssertSubscriber<AdaptiveLimiter.Permit> enqueue(AdaptiveLimiter limiter) {
+        return limiter.acquire().subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private double rejections(String reason) {
+        return registry.get("amazoff.admission.rejections").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    void queuesCallsAboveTheLimitAndAdmitsThemInOrder() {
+        AdaptiveLimiter limiter = limiter(2, 2, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        AdaptiveLimiter.Permit first = admit(limiter);
+        admit(limiter);
+
+        UniAssertSubscriber<AdaptiveLimiter.Permit> second = enqueue(limiter);
+        UniAssertSubscriber<AdaptiveLimiter.Permit> third = enqueue(limiter);
+        assertEquals(2, limiter.queueDepth());
+
+        first.release(null);
+        second.awaitItem();
+        third.assertNotTerminated();
+        assertEquals(1, limiter.queueDepth());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() {
+        AdaptiveLimiter limiter = limiter(1, 1, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        admit(limiter);
+        enqueue(limiter);
+
+        Throwable failure = enqueue(limiter).awaitFailure().getFailure();
+
+        assertEquals(AdaptiveLimiter.Rejection.QUEUE_FULL.name(), failure.getMessage());
+        assertEquals(1, rejections("queue-full"));
+        assertEquals(1, limiter.queueDepth());
+    }
+
+    @Test
+    void expiresCallsThatWaitTooLong() {
+        AdaptiveLimiter limiter = limiter(1, 1, Duration.ofMillis(50), NEVER_SLOW);
+        admit(limiter);
+
+        Throwable failure = enqueue(limiter).awaitFailure(Duration.ofSeconds(5)).getFailure();
+
+        assertInstanceOf(IllegalStateException.class, failure);
+        assertEquals(AdaptiveLimiter.Rejection.QUEUE_TIMEOUT.name(), failure.getMessage());
+        assertEquals(1, rejections("queue-timeout"));
+        assertEquals(0, limiter.queueDepth());
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void abandonedCallsLeaveTheQueue() {
+        AdaptiveLimiter limiter = limiter(1, 1, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        AdaptiveLimiter.Permit permit = admit(limiter);
+
+        enqueue(limiter).cancel();
+        assertEquals(0, limiter.queueDepth());
+
+        permit.release(null);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void raisesTheLimitByOneOverLimitWhenItIsInUse() {
+        AdaptiveLimiter limiter = limiter(2, 0, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        AdaptiveLimiter.Permit first = admit(limiter);
+        AdaptiveLimiter.Permit second = admit(limiter);
+
+        first.release(null);
+        assertEquals(2.5, limiter.limit());
+
+        // Only one of 2.5 slots was in use
+        second.release(null);
+        assertEquals(2.5, limiter.limit());
+    }
+
+    @Test
+    void keepsTheLimitWhenMostOfItIsUnused() {
+        AdaptiveLimiter limiter = limiter(8, 0, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+
+        admit(limiter).release(null);
+
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void lowersTheLimitOncePerLatencyTargetOnDrops() {
+        AdaptiveLimiter limiter = limiter(8, 0, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        AdaptiveLimiter.Permit first = admit(limiter);
+        AdaptiveLimiter.Permit second = admit(limiter);
+
+        first.release(new TimeoutException());
+        assertEquals(4, limiter.limit());
+
+        // Already running when the first one timed out
+        second.release(new TimeoutException());
+        assertEquals(4, limiter.limit());
+        assertEquals(1, registry.get("amazoff.admission.limit.decreases").counter().count());
+    }
+
+    @Test
+    void failuresThatAreNotDropsDoNotLowerTheLimit() {
+        AdaptiveLimiter limiter = limiter(8, 0, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+
+        admit(limiter).release(new IllegalArgumentException("out of stock"));
+
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void slowCallsLowerTheLimitDownToTheMinimum() throws InterruptedException {
+        AdaptiveLimiter limiter = limiter(2, 0, NO_QUEUE_TIMEOUT, Duration.ofMillis(10));
+        AdaptiveLimiter.Permit permit = admit(limiter);
+        Thread.sleep(30);
+        permit.release(null);
+        assertEquals(1, limiter.limit());
+
+        permit = admit(limiter);
+        Thread.sleep(30);
+        permit.release(null);
+        assertEquals(1, limiter.limit());
+    }
+
+    @Test
+    void releasingAPermitTwiceHasNoEffect() {
+        AdaptiveLimiter limiter = limiter(2, 0, NO_QUEUE_TIMEOUT, NEVER_SLOW);
+        admit(limiter);
+        AdaptiveLimiter.Permit permit = admit(limiter);
+
+        permit.release(null);
+        permit.release(null);
+
+        assertEquals(1, limiter.inFlight());
+    }
+}
@@ -0,0 +1,217 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exceptions.errors.ServiceOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+
+class DependencyGuardTest {
+
+    private static final Duration LONG_OPEN = Duration.ofHours(1);
+    private static final Duration SHORT_OPEN = Duration.ofMillis(200);
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private DependencyGuard guard(Duration openDuration) {
+        // 2 in flight, opens at 50% failures over the last 4 calls, 2 trial calls
+        return new DependencyGuard("products", "reserve-stock", 2, 4, 4, 0.5, openDuration, 2,
+                e -> e instanceof IllegalStateException, registry);
+    }
+
+    private static void succeed(DependencyGuard guard) {
+        guard.call(() -> Uni.createFrom().item("ok")).await().indefinitely();
+    }
+
+    private static void fail(DependencyGuard guard) {
+        assertThrows(IllegalStateException.class,
+                () -> guard.call(() -> Uni.createFrom().failure(new IllegalStateException("down")))
+                        .await().indefinitely());
+    }
+
+    private static void open(DependencyGuard guard) {
+        succeed(guard);
+        succeed(guard);
+        fail(guard);
+        fail(guard);
+        assertEquals(DependencyGuard.State.OPEN, guard.state());
+    }
+
+    private double stateGauge() {
+        return registry.get("amazoff.circuit.state").gauge().value();
+    }
+
+    private static void awaitOpenDuration() throws InterruptedException {
+        Thread.sleep(SHORT_OPEN.toMillis() + 50);
+    }
+
+    @Test
+    void opensWhenFailureRatioIsReached() {
+        DependencyGuard guard = guard(LONG_OPEN);
+        open(guard);
+
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(ServiceOverloadedException.class,
+                () -> guard.call(() -> Uni.createFrom().item(calls.incrementAndGet())).await().indefinitely());
+        assertEquals(0, calls.get());
+        assertEquals(2, stateGauge());
+        assertEquals(1, registry.get("amazoff.dependency.rejections").tag("reason", "circuit-open").counter().count());
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        DependencyGuard guard = guard(LONG_OPEN);
+        fail(guard);
+        fail(guard);
+        fail(guard);
+
+        assertEquals(DependencyGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    void ignoresFailuresTheDependencyIsNotBlamedFor() {
+        DependencyGuard guard = guard(LONG_OPEN);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> guard.call(() -> Uni.createFrom().failure(new IllegalArgumentException("bad request")))
+                            .await().indefinitely());
+        }
+
+        assertEquals(DependencyGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    void closesAfterTrialCallsSucceed() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        succeed(guard);
+        assertEquals(DependencyGuard.State.HALF_OPEN, guard.state());
+        succeed(guard);
+        assertEquals(DependencyGuard.State.CLOSED, guard.state());
+        assertEquals(0, stateGauge());
+    }
+
+    @Test
+    void reopensWhenTrialCallFails() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        fail(guard);
+
+        assertEquals(DependencyGuard.State.OPEN, guard.state());
+        assertThrows(ServiceOverloadedException.class, () -> succeed(guard));
+    }
+
+    @Test
+    void halfOpenAdmitsOnlyTrialCalls() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        UniAssertSubscriber<Object> first = guard.call(() -> Uni.createFrom().nothing())
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+        guard.call(() -> Uni.createFrom().nothing()).subscribe().withSubscriber(UniAssertSubscriber.create());
+        assertThrows(ServiceOverloadedException.class, () -> succeed(guard));
+
+        // A cancelled trial gives its slot back
+        first.cancel();
+        succeed(guard);
+        assertEquals(DependencyGuard.State.HALF_OPEN, guard.state());
+    }
+
+    @Test
+    void rejectIfOpenFailsFastWhileOpen() {
+        DependencyGuard guard = guard(LONG_OPEN);
+        assertEquals(DependencyGuard.NO_TRIAL, guard.rejectIfOpen());
+
+        open(guard);
+
+        assertThrows(ServiceOverloadedException.class, guard::rejectIfOpen);
+    }
+
+    @Test
+    void stagedTrialsCloseTheCircuit() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        int first = guard.rejectIfOpen();
+        int second = guard.rejectIfOpen();
+        assertNotEquals(DependencyGuard.NO_TRIAL, first);
+        assertEquals(DependencyGuard.State.HALF_OPEN, guard.state());
+        assertThrows(ServiceOverloadedException.class, guard::rejectIfOpen);
+
+        guard.observe(Uni.createFrom().item("reserved"), first).await().indefinitely();
+        guard.observe(Uni.createFrom().item("reserved"), second).await().indefinitely();
+
+        assertEquals(DependencyGuard.State.CLOSED, guard.state());
+        assertEquals(DependencyGuard.NO_TRIAL, guard.rejectIfOpen());
+    }
+
+    @Test
+    void stagedTrialsThatNeverReportBackAreHandedOutAgain() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        int leaked = guard.rejectIfOpen();
+        guard.rejectIfOpen();
+        assertThrows(ServiceOverloadedException.class, guard::rejectIfOpen);
+
+        awaitOpenDuration();
+        int trial = guard.rejectIfOpen();
+
+        // The late reply of the old round must not free a slot of the new one
+        guard.observe(Uni.createFrom().item("reserved"), leaked).await().indefinitely();
+        guard.rejectIfOpen();
+        assertThrows(ServiceOverloadedException.class, guard::rejectIfOpen);
+        assertNotEquals(leaked, trial);
+    }
+
+    @Test
+    void observedRepliesCloseTheCircuitAfterOpenDuration() throws InterruptedException {
+        DependencyGuard guard = guard(SHORT_OPEN);
+        open(guard);
+        awaitOpenDuration();
+
+        // Compensation replies are observed without being admitted
+        guard.observe(Uni.createFrom().item("released")).await().indefinitely();
+        assertEquals(DependencyGuard.State.HALF_OPEN, guard.state());
+        guard.observe(Uni.createFrom().item("released")).await().indefinitely();
+
+        assertEquals(DependencyGuard.State.CLOSED, guard.state());
+        assertEquals(0, stateGauge());
+    }
+
+    @Test
+    void bulkheadRejectsCallsAboveMaxConcurrent() {
+        DependencyGuard guard = guard(LONG_OPEN);
+        UniAssertSubscriber<Object> first = guard.call(() -> Uni.createFrom().nothing())
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+        guard.call(() -> Uni.createFrom().nothing()).subscribe().withSubscriber(UniAssertSubscriber.create());
+
+        assertThrows(ServiceOverloadedException.class, () -> succeed(guard));
+        assertEquals(1, registry.get("amazoff.dependency.rejections").tag("reason", "bulkhead-full").counter().count());
+
+        first.cancel();
+        succeed(guard);
+    }
+}
@@ -0,0 +1,113 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+
+class MicroBatcherTest {
+
+    private static final Duration LONG_WINDOW = Duration.ofHours(1);
+
+    private Vertx vertx;
+    private MeterRegistry registry;
+    private final List<List<List<String>>> flushed = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private MicroBatcher<List<String>> batcher(Duration window, int maxIds) {
+        return new MicroBatcher<>("test", vertx, window, maxIds, List::size, flushed::add, registry);
+    }
+
+    @Test
+    void flushesOnceTheWeightReachesMaxSize() {
+        MicroBatcher<List<String>> batcher = batcher(LONG_WINDOW, 4);
+
+        batcher.submit(List.of("p1", "p2"));
+        assertTrue(flushed.isEmpty());
+        batcher.submit(List.of("p3", "p4"));
+
+        assertEquals(List.of(List.of(List.of("p1", "p2"), List.of("p3", "p4"))), flushed);
+    }
+
+    @Test
+    void startsANewBatchForALookupThatDoesNotFit() {
+        MicroBatcher<List<String>> batcher = batcher(LONG_WINDOW, 4);
+
+        batcher.submit(List.of("p1", "p2", "p3"));
+        batcher.submit(List.of("p4", "p5"));
+
+        // The first batch never carries more than 4 ids
+        assertEquals(List.of(List.of(List.of("p1", "p2", "p3"))), flushed);
+    }
+
+    @Test
+    void sendsALookupHeavierThanMaxSizeAlone() {
+        MicroBatcher<List<String>> batcher = batcher(LONG_WINDOW, 2);
+
+        batcher.submit(List.of("p1"));
+        batcher.submit(List.of("p2", "p3", "p4"));
+
+        assertEquals(List.of(List.of(List.of("p1")), List.of(List.of("p2", "p3", "p4"))), flushed);
+    }
+
+    @Test
+    void recordsIdsPerBatch() {
+        MicroBatcher<List<String>> batcher = batcher(LONG_WINDOW, 3);
+
+        batcher.submit(List.of("p1"));
+        batcher.submit(List.of("p2", "p3"));
+
+        assertEquals(3, registry.get("amazoff.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void flushesAfterTheWindow() throws InterruptedException {
+        CountDownLatch flushedOnTimer = new CountDownLatch(1);
+        MicroBatcher<String> batcher = new MicroBatcher<>("test", vertx, Duration.ofMillis(20), 50,
+                items -> {
+                    flushed.add(List.of(items));
+                    flushedOnTimer.countDown();
+                }, registry);
+
+        batcher.submit("buyer-1");
+        batcher.submit("buyer-2");
+
+        assertTrue(flushedOnTimer.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of(List.of("buyer-1", "buyer-2"))), flushed);
+    }
+
+    @Test
+    void survivesAFailingFlusher() {
+        MicroBatcher<String> batcher = new MicroBatcher<>("test", vertx, LONG_WINDOW, 1,
+                items -> {
+                    throw new IllegalStateException("broker down");
+                }, registry);
+
+        batcher.submit("buyer-1");
+        batcher.submit("buyer-2");
+
+        assertEquals(2, registry.get("amazoff.batch.size").summary().count());
+    }
+}
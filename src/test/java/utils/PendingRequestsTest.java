@@ -0,0 +1,108 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exceptions.errors.DownstreamTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PendingRequestsTest {
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("Future completed normally");
+    }
+
+    @Test
+    void matchesRepliesByCorrelationId() {
+        PendingRequests<String> pending = new PendingRequests<>("get-products", Duration.ofSeconds(3), registry);
+        PendingRequests.Pending<String> first = pending.register("c1");
+        PendingRequests.Pending<String> second = pending.register("c2");
+
+        pending.remove("c2").complete("second");
+
+        assertEquals("second", second.future().join());
+        assertTrue(!first.future().isDone());
+        assertSame(first, pending.get("c1"));
+        assertNull(pending.get("c2"));
+        assertNull(pending.remove("c2"));
+    }
+
+    @Test
+    void setsTheDeadlineFromTheTimeout() {
+        PendingRequests<String> pending = new PendingRequests<>("get-products", Duration.ofSeconds(3), registry);
+        long before = System.currentTimeMillis();
+
+        long deadline = pending.register("c1").deadline();
+
+        assertTrue(deadline >= before + 3000 && deadline <= System.currentTimeMillis() + 3000);
+    }
+
+    @Test
+    void reapsOnlyExpiredRequests() {
+        PendingRequests<String> expired = new PendingRequests<>("reserve-stock", Duration.ZERO, registry);
+        PendingRequests.Pending<String> request = expired.register("c1");
+        PendingRequests<String> waiting = new PendingRequests<>("release-stock", Duration.ofHours(1), registry);
+        PendingRequests.Pending<String> other = waiting.register("c2");
+
+        assertEquals(1, expired.reapExpired());
+        assertEquals(0, waiting.reapExpired());
+
+        assertInstanceOf(DownstreamTimeoutException.class, failureOf(request.future()));
+        assertTrue(!other.future().isDone());
+        assertEquals(0, expired.size());
+        assertEquals(1, waiting.size());
+        assertEquals(1, registry.get("amazoff.rpc.timeouts").tag("operation", "reserve-stock").counter().count());
+    }
+
+    @Test
+    void aReplyRemovedBeforeTheReaperIsNotTimedOut() {
+        PendingRequests<String> pending = new PendingRequests<>("reserve-stock", Duration.ZERO, registry);
+        PendingRequests.Pending<String> request = pending.register("c1");
+
+        pending.remove("c1").complete("reserved");
+
+        assertEquals(0, pending.reapExpired());
+        assertEquals("reserved", request.future().join());
+    }
+
+    @Test
+    void exportsTheNumberOfPendingRequests() {
+        PendingRequests<String> pending = new PendingRequests<>("get-products", Duration.ofSeconds(3), registry, 4);
+        for (int i = 0; i < 10; i++) {
+            pending.register("c" + i);
+        }
+
+        assertEquals(10, registry.get("amazoff.rpc.pending").tag("operation", "get-products").gauge().value());
+    }
+
+    @Test
+    void createsUniqueCorrelationIds() {
+        assertNotEquals(PendingRequests.newCorrelationId(), PendingRequests.newCorrelationId());
+    }
+}